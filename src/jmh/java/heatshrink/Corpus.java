@@ -0,0 +1,98 @@
+package heatshrink;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Benchmark inputs.  Each is exactly {@link #SIZE} bytes so a benchmark
+ * operation that handles one of them runs at ops/s MiB/s.
+ */
+public enum Corpus {
+
+	/**
+	 * The README, repeated
+	 */
+	TEXT {
+		@Override
+		byte[] load() throws IOException {
+			try (InputStream in = Corpus.class.getResourceAsStream("/testfiles/README.md")) {
+				return fill(readAll(in));
+			}
+		}
+	},
+
+	/**
+	 * The numbers in arrays.csv.gz written as big endian doubles, like
+	 * a sensor log
+	 */
+	TELEMETRY {
+		@Override
+		byte[] load() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(SIZE);
+			DataOutputStream out = new DataOutputStream(bytes);
+			try (BufferedReader r = new BufferedReader(new InputStreamReader(
+					new GZIPInputStream(Corpus.class.getResourceAsStream("/testdata/arrays.csv.gz"))))) {
+				String l;
+				while (bytes.size() < SIZE && (l = r.readLine()) != null) {
+					for (String s : l.split(",")) {
+						out.writeDouble(Double.parseDouble(s));
+					}
+				}
+			}
+			return fill(bytes.toByteArray());
+		}
+	},
+
+	/**
+	 * Incompressible
+	 */
+	RANDOM {
+		@Override
+		byte[] load() {
+			byte[] b = new byte[SIZE];
+			new Random(42).nextBytes(b);
+			return b;
+		}
+	},
+
+	/**
+	 * A short record over and over with a counter in it
+	 */
+	REPETITIVE {
+		@Override
+		byte[] load() {
+			byte[] b = new byte[SIZE];
+			for (int i = 0; i < SIZE; i++) {
+				b[i] = (byte) (i % 64 == 0 ? i >>> 6 : "heatshrink ".charAt(i % 11));
+			}
+			return b;
+		}
+	};
+
+	public static final int SIZE = 1 << 20;
+
+	abstract byte[] load() throws IOException;
+
+	private static byte[] fill(byte[] b) {
+		byte[] result = new byte[SIZE];
+		for (int off = 0; off < SIZE; off += b.length) {
+			System.arraycopy(b, 0, result, off, Math.min(b.length, SIZE - off));
+		}
+		return result;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		for (int n; (n = in.read(buf)) > 0; ) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,97 @@
+package heatshrink;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream throughput over the window/lookahead matrix.  Every operation
+ * handles one {@link Corpus} of 1 MiB so the scores are MiB/s.  Run with
+ * the gc profiler (the default in build.gradle) for gc.alloc.rate.norm.
+ * <p>
+ * The lookahead has to be smaller than the window so 8/8 runs as 8/7.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HsStreamBenchmark {
+
+	@Param({"8", "9", "10", "11", "12", "13", "14", "15"})
+	public int windowSize;
+
+	@Param({"4", "5", "6", "7", "8"})
+	public int lookaheadSize;
+
+	@Param({"TEXT", "TELEMETRY", "RANDOM", "REPETITIVE"})
+	public Corpus corpus;
+
+	private int lookahead;
+	private byte[] uncompressed;
+	private byte[] compressed;
+	private final byte[] buffer = new byte[8192];
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream(2 * Corpus.SIZE);
+
+	@Setup
+	public void setup() throws IOException {
+		lookahead = Math.min(lookaheadSize, windowSize - 1);
+		uncompressed = corpus.load();
+		output.reset();
+		try (HsOutputStream out = new HsOutputStream(output, windowSize, lookahead)) {
+			out.write(uncompressed);
+		}
+		compressed = output.toByteArray();
+	}
+
+	@Benchmark
+	public int write() throws IOException {
+		output.reset();
+		try (HsOutputStream out = new HsOutputStream(output, windowSize, lookahead)) {
+			out.write(uncompressed);
+		}
+		return output.size();
+	}
+
+	@Benchmark
+	public void read(Blackhole bh) throws IOException {
+		try (HsInputStream in = new HsInputStream(new ByteArrayInputStream(compressed), windowSize, lookahead)) {
+			for (int n; (n = in.read(buffer)) > 0; ) {
+				bh.consume(buffer);
+			}
+		}
+	}
+
+	@Benchmark
+	public int readByte() throws IOException {
+		int sum = 0;
+		try (HsInputStream in = new HsInputStream(new ByteArrayInputStream(compressed), windowSize, lookahead)) {
+			for (int b; (b = in.read()) != -1; ) {
+				sum += b;
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long skip() throws IOException {
+		try (HsInputStream in = new HsInputStream(new ByteArrayInputStream(compressed), windowSize, lookahead)) {
+			return in.skip(Long.MAX_VALUE);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package heatshrink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a dictionary for {@link HsEncoder#setDictionary(byte[])} and
+ * {@link HsDecoder#setDictionary(byte[])} from sample messages.
+ * <pre>
+ * DictionaryTrainer trainer = new DictionaryTrainer(1024);
+ * for (byte[] message : samples) {
+ *     trainer.addSample(message);
+ * }
+ * byte[] dictionary = trainer.train();
+ * </pre>
+ * Short strings found in the most samples are picked first, each grown
+ * into a segment while its neighbours are nearly as common.  The best
+ * segments go at the end of the dictionary, where a message can still
+ * reach them after its own bytes have filled the window.
+ * <p>
+ * Keep the dictionary well under the window size so messages can
+ * match against themselves too.
+ */
+public class DictionaryTrainer {
+
+	private final int size;
+	private final int segmentLength;
+	private final List<byte[]> samples = new ArrayList<>();
+
+	/**
+	 * Creates a trainer matching 6 byte strings.
+	 *
+	 * @param size The most bytes the dictionary can have
+	 */
+	public DictionaryTrainer(int size) {
+		this(size, 6);
+	}
+
+	/**
+	 * Creates a trainer.
+	 *
+	 * @param size The most bytes the dictionary can have
+	 * @param segmentLength The length of the strings counted, from 2 to 8.
+	 *                      A bit longer than the shortest backref worth
+	 *                      using works well.
+	 */
+	public DictionaryTrainer(int size, int segmentLength) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Invalid size " + size);
+		}
+		if (segmentLength < 2 || segmentLength > 8) {
+			throw new IllegalArgumentException("Invalid segment length " + segmentLength);
+		}
+		this.size = size;
+		this.segmentLength = segmentLength;
+	}
+
+	/**
+	 * @param b a sample message.  It's copied.
+	 */
+	public void addSample(byte[] b) {
+		addSample(b, 0, b.length);
+	}
+
+	/**
+	 * @param b holds a sample message.  It's copied.
+	 * @param off where it starts
+	 * @param len how long it is
+	 */
+	public void addSample(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		samples.add(Arrays.copyOfRange(b, off, off + len));
+	}
+
+	/**
+	 * Build a dictionary from the samples added so far.  Only strings in
+	 * at least two samples are used, so it can be shorter than the size
+	 * or even empty.
+	 *
+	 * @return the dictionary
+	 */
+	public byte[] train() {
+		// how many samples each string is in and where it's first seen
+		Map<Long, Segment> segments = new HashMap<>();
+		Set<Long> seen = new HashSet<>();
+		for (int s = 0; s < samples.size(); s++) {
+			byte[] sample = samples.get(s);
+			seen.clear();
+			for (int i = 0; i + segmentLength <= sample.length; i++) {
+				long key = key(sample, i);
+				if (seen.add(key)) {
+					Segment segment = segments.get(key);
+					if (segment == null) {
+						segments.put(key, new Segment(s, i));
+					} else {
+						segment.count++;
+					}
+				}
+			}
+		}
+
+		List<Segment> candidates = new ArrayList<>();
+		for (Segment segment : segments.values()) {
+			if (segment.count > 1) {
+				candidates.add(segment);
+			}
+		}
+		candidates.sort((a, b) -> a.count != b.count ? Integer.compare(b.count, a.count)
+				: a.sample != b.sample ? Integer.compare(a.sample, b.sample)
+				: Integer.compare(a.pos, b.pos));
+
+		// picked best first, laid out best last
+		List<byte[]> picked = new ArrayList<>();
+		Set<Long> covered = new HashSet<>();
+		int total = 0;
+		for (Segment seed : candidates) {
+			if (total >= size) {
+				break;
+			}
+			byte[] sample = samples.get(seed.sample);
+			if (covered.contains(key(sample, seed.pos))) {
+				continue;
+			}
+			// grow while the neighbouring strings are nearly as common
+			int threshold = Math.max(2, seed.count / 2);
+			int start = seed.pos;
+			while (start > 0 && common(sample, start - 1, segments, threshold, covered)) {
+				start--;
+			}
+			int end = seed.pos + segmentLength;
+			while (end < sample.length && common(sample, end + 1 - segmentLength, segments, threshold, covered)) {
+				end++;
+			}
+			for (int i = start; i + segmentLength <= end; i++) {
+				covered.add(key(sample, i));
+			}
+			picked.add(Arrays.copyOfRange(sample, start, end));
+			total += end - start;
+		}
+
+		byte[] dictionary = new byte[Math.min(total, size)];
+		int pos = dictionary.length;
+		for (byte[] segment : picked) {
+			int n = Math.min(segment.length, pos);
+			pos -= n;
+			System.arraycopy(segment, segment.length - n, dictionary, pos, n);
+		}
+		return dictionary;
+	}
+
+	private boolean common(byte[] sample, int pos, Map<Long, Segment> segments, int threshold,
+			Set<Long> covered) {
+		long key = key(sample, pos);
+		Segment segment = segments.get(key);
+		return segment != null && segment.count >= threshold && !covered.contains(key);
+	}
+
+	/**
+	 * The bytes of the string at <code>pos</code> packed into a long
+	 */
+	private long key(byte[] b, int pos) {
+		long key = 0;
+		for (int i = 0; i < segmentLength; i++) {
+			key = (key << 8) | (b[pos + i] & 0xff);
+		}
+		return key;
+	}
+
+	private static final class Segment {
+		final int sample;
+		final int pos;
+		int count = 1;
+
+		Segment(int sample, int pos) {
+			this.sample = sample;
+			this.pos = pos;
+		}
+	}
+}
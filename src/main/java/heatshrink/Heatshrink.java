@@ -0,0 +1,185 @@
+package heatshrink;
+
+/**
+ * One shot compression of byte arrays.  No streams are involved: the
+ * decoder writes straight into the caller's array, and compressed bytes
+ * are copied once out of the encoder's output buffer.  Each thread keeps
+ * the codec it used last, so repeated calls with the same sizes don't
+ * allocate.
+ */
+public final class Heatshrink {
+
+	/**
+	 * Window and lookahead sizes (in bits) used when none are given.
+	 * Same as {@link HsInputStream#HsInputStream(java.io.InputStream)}.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 11;
+	public static final int DEFAULT_LOOKAHEAD_SIZE = 4;
+
+	private static final ThreadLocal<Codecs> CODECS = ThreadLocal.withInitial(Codecs::new);
+
+	/**
+	 * The most bytes compressing <code>len</code> bytes can produce.  A
+	 * backref is only used when it's no bigger than the literals it
+	 * replaces and a literal costs 9 bits, so the bound is the same for
+	 * every size and level.
+	 *
+	 * @param len the number of bytes to compress
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the size to allocate for the compressed bytes
+	 */
+	public static int maxCompressedLength(int len, int windowSize, int lookaheadSize) {
+		if (len < 0) {
+			throw new IllegalArgumentException("Invalid length " + len);
+		}
+		long max = (9L * len + 7) >> 3;
+		if (max > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too long " + len);
+		}
+		return (int) max;
+	}
+
+	/**
+	 * Compress using the default sizes and level
+	 *
+	 * @see #compress(byte[], int, int, byte[], int, int, int, int)
+	 */
+	public static int compress(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		return compress(src, off, len, dst, dstOff, DEFAULT_WINDOW_SIZE, DEFAULT_LOOKAHEAD_SIZE);
+	}
+
+	/**
+	 * Compress using the default level
+	 *
+	 * @see #compress(byte[], int, int, byte[], int, int, int, int)
+	 */
+	public static int compress(byte[] src, int off, int len, byte[] dst, int dstOff,
+			int windowSize, int lookaheadSize) {
+		return compress(src, off, len, dst, dstOff, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Compress <code>len</code> bytes of <code>src</code> into
+	 * <code>dst</code>.  The output is the same as writing the bytes to a
+	 * {@link HsOutputStream} and closing it.
+	 *
+	 * @param src the bytes to compress
+	 * @param off where they start
+	 * @param len how many there are
+	 * @param dst where to put the compressed bytes.  Room for
+	 *            {@link #maxCompressedLength(int, int, int)} is always enough.
+	 * @param dstOff where to start
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @return the number of compressed bytes written
+	 * @throws IllegalArgumentException if <code>dst</code> is too small
+	 */
+	public static int compress(byte[] src, int off, int len, byte[] dst, int dstOff,
+			int windowSize, int lookaheadSize, int level) {
+		if (dst == null) {
+			throw new NullPointerException();
+		} else if (dstOff < 0 || dstOff > dst.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		HsEncoder encoder = CODECS.get().encoder(windowSize, lookaheadSize, level);
+		try {
+			encoder.setInput(src, off, len);
+			encoder.finish();
+			int n = encoder.encode(dst, dstOff, dst.length - dstOff);
+			if (!encoder.finished()) {
+				throw new IllegalArgumentException("Output buffer too small");
+			}
+			return n;
+		} finally {
+			encoder.reset();
+		}
+	}
+
+	/**
+	 * Decompress using the default sizes
+	 *
+	 * @see #decompress(byte[], int, int, byte[], int, int, int)
+	 */
+	public static int decompress(byte[] src, int off, int len, byte[] dst, int dstOff) {
+		return decompress(src, off, len, dst, dstOff, DEFAULT_WINDOW_SIZE, DEFAULT_LOOKAHEAD_SIZE);
+	}
+
+	/**
+	 * Decompress <code>len</code> bytes of <code>src</code> into
+	 * <code>dst</code>.  Heatshrink data doesn't record its decompressed
+	 * length so <code>dst</code> needs to be big enough for all of it.
+	 *
+	 * @param src the compressed bytes
+	 * @param off where they start
+	 * @param len how many there are
+	 * @param dst where to put the decompressed bytes
+	 * @param dstOff where to start
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the number of decompressed bytes written
+	 * @throws IllegalArgumentException if <code>dst</code> is too small
+	 */
+	public static int decompress(byte[] src, int off, int len, byte[] dst, int dstOff,
+			int windowSize, int lookaheadSize) {
+		if (dst == null) {
+			throw new NullPointerException();
+		} else if (dstOff < 0 || dstOff > dst.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		Codecs codecs = CODECS.get();
+		HsDecoder decoder = codecs.decoder(windowSize, lookaheadSize);
+		try {
+			decoder.setInput(src, off, len);
+			// dst doubles as the window
+			int n = decoder.decodeInto(dst, dstOff, dst.length - dstOff);
+			// a full dst may just be an exact fit so see if there's more
+			if (!decoder.needsInput() && decoder.decode(codecs.tmp) > 0) {
+				throw new IllegalArgumentException("Output buffer too small");
+			}
+			return n;
+		} finally {
+			decoder.reset();
+		}
+	}
+
+	/**
+	 * The codecs a thread used last and their settings
+	 */
+	private static final class Codecs {
+		private final byte[] tmp = new byte[1];
+
+		private HsEncoder encoder;
+		private int encoderWindowSize;
+		private int encoderLookaheadSize;
+		private int encoderLevel;
+
+		private HsDecoder decoder;
+		private int decoderWindowSize;
+		private int decoderLookaheadSize;
+
+		HsEncoder encoder(int windowSize, int lookaheadSize, int level) {
+			if (encoder == null || encoderWindowSize != windowSize
+					|| encoderLookaheadSize != lookaheadSize || encoderLevel != level) {
+				encoder = new HsEncoder(windowSize, lookaheadSize, level);
+				encoderWindowSize = windowSize;
+				encoderLookaheadSize = lookaheadSize;
+				encoderLevel = level;
+			}
+			return encoder;
+		}
+
+		HsDecoder decoder(int windowSize, int lookaheadSize) {
+			if (decoder == null || decoderWindowSize != windowSize || decoderLookaheadSize != lookaheadSize) {
+				decoder = new HsDecoder(windowSize, lookaheadSize);
+				decoderWindowSize = windowSize;
+				decoderLookaheadSize = lookaheadSize;
+			}
+			return decoder;
+		}
+	}
+
+	private Heatshrink() {}
+}
@@ -0,0 +1,445 @@
+package heatshrink;
+
+import java.util.Arrays;
+
+/**
+ * One shot compression of primitive arrays.  Values are transformed and
+ * laid out as bytes in one pass, with no boxing or streams, then
+ * compressed with {@link Heatshrink}.  Sensor readings usually change
+ * a little at a time, which the transforms turn into runs of small,
+ * repeating bytes that heatshrink can match.
+ * <pre>
+ * byte[] compressed = HsArrays.compress(readings);
+ * int[] readings = HsArrays.decompressInts(compressed);
+ * </pre>
+ * The compressed array starts with a small header holding the element
+ * type, transforms, window and lookahead sizes and the number of
+ * values, so decompressing needs nothing else.
+ */
+public final class HsArrays {
+
+	/**
+	 * Store each value as the difference from the one before
+	 */
+	public static final int DELTA = 1;
+	/**
+	 * Map small negative values to small positive ones so their high
+	 * bytes are zero.  Use with {@link #DELTA}.
+	 */
+	public static final int ZIGZAG = 2;
+	/**
+	 * Put the first byte of every value together, then the second byte
+	 * and so on, so bytes that rarely change end up next to each other
+	 */
+	public static final int SHUFFLE = 4;
+	/**
+	 * Store each value XORed with the one before.  Suits floating point,
+	 * where neighbouring values share sign, exponent and high mantissa
+	 * bits.  Can't be used with {@link #DELTA}.
+	 */
+	public static final int XOR = 8;
+
+	/**
+	 * Transforms used for integer types when none are given
+	 */
+	public static final int DEFAULT_TRANSFORMS = DELTA | ZIGZAG | SHUFFLE;
+	/**
+	 * Transforms used for doubles when none are given
+	 */
+	public static final int DEFAULT_DOUBLE_TRANSFORMS = XOR | SHUFFLE;
+
+	/**
+	 * Element types in the header
+	 */
+	private static final byte SHORT = 1;
+	private static final byte INT = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+
+	/**
+	 * type, transforms, window size, lookahead size, count
+	 */
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * @see #compress(short[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(short[] values) {
+		return compress(values, 0, values.length, DEFAULT_TRANSFORMS,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(short[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(short[] values, int transforms) {
+		return compress(values, 0, values.length, transforms,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Compress <code>len</code> values of <code>values</code>
+	 *
+	 * @param values the values to compress
+	 * @param off where they start
+	 * @param len how many there are
+	 * @param transforms {@link #DELTA}, {@link #ZIGZAG}, {@link #SHUFFLE}
+	 *                   and {@link #XOR} or'd together, or 0 for none
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @return the compressed values
+	 */
+	public static byte[] compress(short[] values, int off, int len, int transforms,
+			int windowSize, int lookaheadSize, int level) {
+		checkArgs(values.length, off, len, transforms, Short.BYTES);
+		byte[] raw = new byte[len * Short.BYTES];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		long prev = 0;
+		for (int i = 0; i < len; i++) {
+			long v = values[off + i];
+			put(raw, i, len, Short.BYTES, shuffle, transform(v, prev, transforms, Short.SIZE));
+			prev = v;
+		}
+		return pack(SHORT, raw, len, transforms, windowSize, lookaheadSize, level);
+	}
+
+	/**
+	 * @see #compress(int[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(int[] values) {
+		return compress(values, 0, values.length, DEFAULT_TRANSFORMS,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(int[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(int[] values, int transforms) {
+		return compress(values, 0, values.length, transforms,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(short[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(int[] values, int off, int len, int transforms,
+			int windowSize, int lookaheadSize, int level) {
+		checkArgs(values.length, off, len, transforms, Integer.BYTES);
+		byte[] raw = new byte[len * Integer.BYTES];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		long prev = 0;
+		for (int i = 0; i < len; i++) {
+			long v = values[off + i];
+			put(raw, i, len, Integer.BYTES, shuffle, transform(v, prev, transforms, Integer.SIZE));
+			prev = v;
+		}
+		return pack(INT, raw, len, transforms, windowSize, lookaheadSize, level);
+	}
+
+	/**
+	 * @see #compress(long[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(long[] values) {
+		return compress(values, 0, values.length, DEFAULT_TRANSFORMS,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(long[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(long[] values, int transforms) {
+		return compress(values, 0, values.length, transforms,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(short[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(long[] values, int off, int len, int transforms,
+			int windowSize, int lookaheadSize, int level) {
+		checkArgs(values.length, off, len, transforms, Long.BYTES);
+		byte[] raw = new byte[len * Long.BYTES];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		long prev = 0;
+		for (int i = 0; i < len; i++) {
+			long v = values[off + i];
+			put(raw, i, len, Long.BYTES, shuffle, transform(v, prev, transforms, Long.SIZE));
+			prev = v;
+		}
+		return pack(LONG, raw, len, transforms, windowSize, lookaheadSize, level);
+	}
+
+	/**
+	 * @see #compress(double[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(double[] values) {
+		return compress(values, 0, values.length, DEFAULT_DOUBLE_TRANSFORMS,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @see #compress(double[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(double[] values, int transforms) {
+		return compress(values, 0, values.length, transforms,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * The transforms work on the raw bits of each value, so NaNs keep
+	 * their payload.
+	 *
+	 * @see #compress(short[], int, int, int, int, int, int)
+	 */
+	public static byte[] compress(double[] values, int off, int len, int transforms,
+			int windowSize, int lookaheadSize, int level) {
+		checkArgs(values.length, off, len, transforms, Double.BYTES);
+		byte[] raw = new byte[len * Double.BYTES];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		long prev = 0;
+		for (int i = 0; i < len; i++) {
+			long v = Double.doubleToRawLongBits(values[off + i]);
+			put(raw, i, len, Double.BYTES, shuffle, transform(v, prev, transforms, Long.SIZE));
+			prev = v;
+		}
+		return pack(DOUBLE, raw, len, transforms, windowSize, lookaheadSize, level);
+	}
+
+	/**
+	 * @see #decompressShorts(byte[], int, int)
+	 */
+	public static short[] decompressShorts(byte[] b) {
+		return decompressShorts(b, 0, b.length);
+	}
+
+	/**
+	 * Decompress values from {@link #compress(short[], int, int, int, int, int, int)}
+	 *
+	 * @param b holds the compressed values
+	 * @param off where they start
+	 * @param len how many bytes there are
+	 * @return the values
+	 * @throws IllegalArgumentException if the bytes don't hold shorts or
+	 *                                  are cut short
+	 */
+	public static short[] decompressShorts(byte[] b, int off, int len) {
+		byte[] raw = unpack(b, off, len, SHORT, Short.BYTES);
+		int transforms = b[off + 1];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		short[] values = new short[raw.length / Short.BYTES];
+		long prev = 0;
+		for (int i = 0; i < values.length; i++) {
+			prev = untransform(get(raw, i, values.length, Short.BYTES, shuffle), prev, transforms, Short.SIZE);
+			values[i] = (short) prev;
+		}
+		return values;
+	}
+
+	/**
+	 * @see #decompressInts(byte[], int, int)
+	 */
+	public static int[] decompressInts(byte[] b) {
+		return decompressInts(b, 0, b.length);
+	}
+
+	/**
+	 * @see #decompressShorts(byte[], int, int)
+	 */
+	public static int[] decompressInts(byte[] b, int off, int len) {
+		byte[] raw = unpack(b, off, len, INT, Integer.BYTES);
+		int transforms = b[off + 1];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		int[] values = new int[raw.length / Integer.BYTES];
+		long prev = 0;
+		for (int i = 0; i < values.length; i++) {
+			prev = untransform(get(raw, i, values.length, Integer.BYTES, shuffle), prev, transforms, Integer.SIZE);
+			values[i] = (int) prev;
+		}
+		return values;
+	}
+
+	/**
+	 * @see #decompressLongs(byte[], int, int)
+	 */
+	public static long[] decompressLongs(byte[] b) {
+		return decompressLongs(b, 0, b.length);
+	}
+
+	/**
+	 * @see #decompressShorts(byte[], int, int)
+	 */
+	public static long[] decompressLongs(byte[] b, int off, int len) {
+		byte[] raw = unpack(b, off, len, LONG, Long.BYTES);
+		int transforms = b[off + 1];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		long[] values = new long[raw.length / Long.BYTES];
+		long prev = 0;
+		for (int i = 0; i < values.length; i++) {
+			prev = untransform(get(raw, i, values.length, Long.BYTES, shuffle), prev, transforms, Long.SIZE);
+			values[i] = prev;
+		}
+		return values;
+	}
+
+	/**
+	 * @see #decompressDoubles(byte[], int, int)
+	 */
+	public static double[] decompressDoubles(byte[] b) {
+		return decompressDoubles(b, 0, b.length);
+	}
+
+	/**
+	 * @see #decompressShorts(byte[], int, int)
+	 */
+	public static double[] decompressDoubles(byte[] b, int off, int len) {
+		byte[] raw = unpack(b, off, len, DOUBLE, Double.BYTES);
+		int transforms = b[off + 1];
+		boolean shuffle = (transforms & SHUFFLE) != 0;
+		double[] values = new double[raw.length / Double.BYTES];
+		long prev = 0;
+		for (int i = 0; i < values.length; i++) {
+			prev = untransform(get(raw, i, values.length, Double.BYTES, shuffle), prev, transforms, Long.SIZE);
+			values[i] = Double.longBitsToDouble(prev);
+		}
+		return values;
+	}
+
+	private static void checkArgs(int length, int off, int len, int transforms, int size) {
+		if (off < 0 || len < 0 || off > length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		if ((transforms & ~(DELTA | ZIGZAG | SHUFFLE | XOR)) != 0
+				|| (transforms & (DELTA | XOR)) == (DELTA | XOR)) {
+			throw new IllegalArgumentException("Invalid transforms " + transforms);
+		}
+		if (len > (Integer.MAX_VALUE - HEADER_SIZE) / 9 * 8 / size) {
+			throw new IllegalArgumentException("Too long " + len);
+		}
+	}
+
+	/**
+	 * @param v a sign extended value
+	 * @param prev the value before it
+	 * @param bits the width of the values
+	 * @return the transformed value in the low <code>bits</code> bits
+	 */
+	private static long transform(long v, long prev, int transforms, int bits) {
+		int shift = Long.SIZE - bits;
+		if ((transforms & DELTA) != 0) {
+			// wraps like arithmetic on the type itself
+			v = (v - prev) << shift >> shift;
+		} else if ((transforms & XOR) != 0) {
+			v ^= prev;
+		}
+		if ((transforms & ZIGZAG) != 0) {
+			v = (v << 1) ^ (v >> 63);
+		}
+		return v;
+	}
+
+	/**
+	 * Undo {@link #transform(long, long, int, int)}
+	 *
+	 * @return the sign extended value
+	 */
+	private static long untransform(long v, long prev, int transforms, int bits) {
+		int shift = Long.SIZE - bits;
+		if ((transforms & ZIGZAG) != 0) {
+			v = (v >>> 1) ^ -(v & 1);
+		} else {
+			v = v << shift >> shift;
+		}
+		if ((transforms & DELTA) != 0) {
+			v = (prev + v) << shift >> shift;
+		} else if ((transforms & XOR) != 0) {
+			v ^= prev;
+		}
+		return v;
+	}
+
+	/**
+	 * Store value <code>i</code> of <code>count</code>, most significant
+	 * byte first
+	 */
+	private static void put(byte[] raw, int i, int count, int size, boolean shuffle, long v) {
+		if (shuffle) {
+			for (int k = 0, p = i; k < size; k++, p += count) {
+				raw[p] = (byte) (v >>> ((size - 1 - k) << 3));
+			}
+		} else {
+			for (int k = 0, p = i * size; k < size; k++, p++) {
+				raw[p] = (byte) (v >>> ((size - 1 - k) << 3));
+			}
+		}
+	}
+
+	/**
+	 * @return value <code>i</code> of <code>count</code>, zero extended
+	 */
+	private static long get(byte[] raw, int i, int count, int size, boolean shuffle) {
+		long v = 0;
+		if (shuffle) {
+			for (int k = 0, p = i; k < size; k++, p += count) {
+				v = (v << 8) | (raw[p] & 0xff);
+			}
+		} else {
+			for (int k = 0, p = i * size; k < size; k++, p++) {
+				v = (v << 8) | (raw[p] & 0xff);
+			}
+		}
+		return v;
+	}
+
+	private static byte[] pack(byte type, byte[] raw, int count, int transforms,
+			int windowSize, int lookaheadSize, int level) {
+		byte[] dst = new byte[HEADER_SIZE + Heatshrink.maxCompressedLength(raw.length, windowSize, lookaheadSize)];
+		dst[0] = type;
+		dst[1] = (byte) transforms;
+		dst[2] = (byte) windowSize;
+		dst[3] = (byte) lookaheadSize;
+		dst[4] = (byte) (count >>> 24);
+		dst[5] = (byte) (count >>> 16);
+		dst[6] = (byte) (count >>> 8);
+		dst[7] = (byte) count;
+		int n = Heatshrink.compress(raw, 0, raw.length, dst, HEADER_SIZE, windowSize, lookaheadSize, level);
+		return Arrays.copyOf(dst, HEADER_SIZE + n);
+	}
+
+	/**
+	 * Check the header and decompress the transformed bytes
+	 */
+	private static byte[] unpack(byte[] b, int off, int len, byte type, int size) {
+		if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len < HEADER_SIZE) {
+			throw new IllegalArgumentException("Too short for a header");
+		}
+		if (b[off] != type) {
+			throw new IllegalArgumentException("Wrong element type " + b[off]);
+		}
+		int transforms = b[off + 1];
+		int windowSize = b[off + 2];
+		int lookaheadSize = b[off + 3];
+		if ((transforms & ~(DELTA | ZIGZAG | SHUFFLE | XOR)) != 0
+				|| (transforms & (DELTA | XOR)) == (DELTA | XOR)
+				|| !HsEncoder.isValidSize(windowSize, lookaheadSize)) {
+			throw new IllegalArgumentException("Corrupt header");
+		}
+		int count = ((b[off + 4] & 0xff) << 24) | ((b[off + 5] & 0xff) << 16)
+				| ((b[off + 6] & 0xff) << 8) | (b[off + 7] & 0xff);
+		if (count < 0 || count > Integer.MAX_VALUE / size) {
+			throw new IllegalArgumentException("Invalid count " + count);
+		}
+		byte[] raw = new byte[count * size];
+		int n = Heatshrink.decompress(b, off + HEADER_SIZE, len - HEADER_SIZE, raw, 0, windowSize, lookaheadSize);
+		if (n != raw.length) {
+			throw new IllegalArgumentException("Truncated, " + n + " of " + raw.length + " bytes");
+		}
+		return raw;
+	}
+
+	private HsArrays() {}
+}
@@ -0,0 +1,177 @@
+package heatshrink;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * File to file encoding and decoding on {@link AsynchronousFileChannel}s.
+ * Each read and write is asynchronous and the coding is done on the
+ * channel's completion threads, so no thread is parked while a file is
+ * worked on.
+ * <pre>
+ * HsAsyncFiles.encode(src, dst, 11, 4)
+ *         .thenAccept(written -&gt; ...);
+ * </pre>
+ * The channels aren't closed or truncated, so open the output with
+ * {@link java.nio.file.StandardOpenOption#TRUNCATE_EXISTING} to replace a
+ * file.
+ *
+ * @see HsFiles
+ */
+public final class HsAsyncFiles {
+
+	/**
+	 * Size of the buffers read into and written from
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Encode a whole file using the default compression level
+	 *
+	 * @see #encode(AsynchronousFileChannel, AsynchronousFileChannel, int, int, int)
+	 */
+	public static CompletableFuture<Long> encode(AsynchronousFileChannel in, AsynchronousFileChannel out,
+			int windowSize, int lookaheadSize) {
+		return encode(in, out, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Encode a whole file
+	 *
+	 * @param in the file to encode, read from the start
+	 * @param out where to write, from the start
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @return the number of bytes written, or the failure
+	 */
+	public static CompletableFuture<Long> encode(AsynchronousFileChannel in, AsynchronousFileChannel out,
+			int windowSize, int lookaheadSize, int level) {
+		HsEncoder encoder = new HsEncoder(windowSize, lookaheadSize, level);
+		return new Pump(in, out) {
+			@Override
+			HsResult code(ByteBuffer src, ByteBuffer dst, boolean endOfInput) {
+				return endOfInput ? encoder.finish(dst) : encoder.encode(src, dst);
+			}
+		}.start();
+	}
+
+	/**
+	 * Decode a whole file
+	 *
+	 * @param in the file to decode, read from the start
+	 * @param out where to write, from the start
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the number of bytes written, or the failure
+	 */
+	public static CompletableFuture<Long> decode(AsynchronousFileChannel in, AsynchronousFileChannel out,
+			int windowSize, int lookaheadSize) {
+		HsDecoder decoder = new HsDecoder(windowSize, lookaheadSize);
+		return new Pump(in, out) {
+			@Override
+			HsResult code(ByteBuffer src, ByteBuffer dst, boolean endOfInput) {
+				return decoder.decode(src, dst);
+			}
+		}.start();
+	}
+
+	/**
+	 * Reads, codes and writes in turn, each step started by the
+	 * completion of the one before
+	 */
+	private abstract static class Pump {
+		private final AsynchronousFileChannel in;
+		private final AsynchronousFileChannel out;
+		private final ByteBuffer src = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ByteBuffer dst = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final CompletableFuture<Long> result = new CompletableFuture<>();
+		private long inPos;
+		private long outPos;
+		private boolean endOfInput;
+
+		private final CompletionHandler<Integer, Void> onRead = new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer n, Void attachment) {
+				src.flip();
+				if (n < 0) {
+					endOfInput = true;
+				} else {
+					inPos += n;
+				}
+				code();
+			}
+
+			@Override
+			public void failed(Throwable t, Void attachment) {
+				result.completeExceptionally(t);
+			}
+		};
+
+		private final CompletionHandler<Integer, Void> onWrite = new CompletionHandler<Integer, Void>() {
+			@Override
+			public void completed(Integer n, Void attachment) {
+				outPos += n;
+				if (dst.hasRemaining()) {
+					write();
+				} else {
+					dst.clear();
+					code();
+				}
+			}
+
+			@Override
+			public void failed(Throwable t, Void attachment) {
+				result.completeExceptionally(t);
+			}
+		};
+
+		Pump(AsynchronousFileChannel in, AsynchronousFileChannel out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		/**
+		 * Code as much of <code>src</code> into <code>dst</code> as fits
+		 *
+		 * @param endOfInput true once <code>src</code> holds the last of the input
+		 */
+		abstract HsResult code(ByteBuffer src, ByteBuffer dst, boolean endOfInput);
+
+		CompletableFuture<Long> start() {
+			src.flip();
+			code();
+			return result;
+		}
+
+		private void code() {
+			try {
+				HsResult r = code(src, dst, endOfInput);
+				if (r == HsResult.OVERFLOW || (endOfInput && dst.position() > 0)) {
+					dst.flip();
+					write();
+				} else if (!endOfInput) {
+					src.compact();
+					in.read(src, inPos, null, onRead);
+				} else {
+					result.complete(outPos);
+				}
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}
+
+		private void write() {
+			try {
+				out.write(dst, outPos, null, onWrite);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}
+	}
+
+	private HsAsyncFiles() {}
+}
@@ -0,0 +1,146 @@
+package heatshrink;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread safe pool of streams and codecs sharing one set of sizes, for
+ * encoding lots of small messages.  Everything is reset when it's taken
+ * from the pool, dropping any dictionary, sync markers or stats the last
+ * user set, so, once the pool has warmed up, a message costs no
+ * allocation and only the part of the window it used is cleared.
+ * <pre>
+ * HsOutputStream hso = pool.getOutputStream(out);
+ * try {
+ *     hso.write(message);
+ *     hso.flush();
+ * } finally {
+ *     pool.release(hso);
+ * }
+ * </pre>
+ * Don't close pooled streams, that closes the underlying stream too.
+ * Only release things taken from the same pool and don't use them after.
+ */
+public class HsCodecPool {
+
+	private final int windowSize;
+	private final int lookaheadSize;
+	private final int level;
+
+	private final Queue<HsOutputStream> outputStreams = new ConcurrentLinkedQueue<>();
+	private final Queue<HsInputStream> inputStreams = new ConcurrentLinkedQueue<>();
+	private final Queue<HsEncoder> encoders = new ConcurrentLinkedQueue<>();
+	private final Queue<HsDecoder> decoders = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Creates a pool using the default compression level.
+	 *
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 */
+	public HsCodecPool(int windowSize, int lookaheadSize) {
+		this(windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 */
+	public HsCodecPool(int windowSize, int lookaheadSize, int level) {
+		HsEncoder.checkSizes(windowSize, lookaheadSize);
+		if (level < HsEncoder.BEST_SPEED || level > HsEncoder.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		this.windowSize = windowSize;
+		this.lookaheadSize = lookaheadSize;
+		this.level = level;
+	}
+
+	/**
+	 * @param out the underlying output stream
+	 * @return a cleared stream writing to <code>out</code>
+	 */
+	public HsOutputStream getOutputStream(OutputStream out) {
+		HsOutputStream hso = outputStreams.poll();
+		if (hso == null) {
+			return new HsOutputStream(out, windowSize, lookaheadSize, level);
+		}
+		hso.clearAll(out);
+		return hso;
+	}
+
+	/**
+	 * @param in the underlying input stream
+	 * @return a cleared stream reading from <code>in</code>
+	 */
+	public HsInputStream getInputStream(InputStream in) {
+		HsInputStream hsi = inputStreams.poll();
+		if (hsi == null) {
+			return new HsInputStream(in, windowSize, lookaheadSize);
+		}
+		hsi.clearAll(in);
+		return hsi;
+	}
+
+	/**
+	 * @return a reset encoder
+	 */
+	public HsEncoder getEncoder() {
+		HsEncoder encoder = encoders.poll();
+		if (encoder == null) {
+			return new HsEncoder(windowSize, lookaheadSize, level);
+		}
+		encoder.resetAll();
+		return encoder;
+	}
+
+	/**
+	 * @return a reset decoder
+	 */
+	public HsDecoder getDecoder() {
+		HsDecoder decoder = decoders.poll();
+		if (decoder == null) {
+			return new HsDecoder(windowSize, lookaheadSize);
+		}
+		decoder.resetAll();
+		return decoder;
+	}
+
+	/**
+	 * Hand a stream back.  Anything not flushed is discarded.
+	 *
+	 * @param hso a stream from {@link #getOutputStream(OutputStream)}
+	 */
+	public void release(HsOutputStream hso) {
+		outputStreams.add(hso);
+	}
+
+	/**
+	 * Hand a stream back.  Anything not read is discarded.
+	 *
+	 * @param hsi a stream from {@link #getInputStream(InputStream)}
+	 */
+	public void release(HsInputStream hsi) {
+		inputStreams.add(hsi);
+	}
+
+	/**
+	 * @param encoder an encoder from {@link #getEncoder()}
+	 */
+	public void release(HsEncoder encoder) {
+		encoders.add(encoder);
+	}
+
+	/**
+	 * @param decoder a decoder from {@link #getDecoder()}
+	 */
+	public void release(HsDecoder decoder) {
+		decoders.add(decoder);
+	}
+}
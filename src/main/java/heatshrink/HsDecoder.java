@@ -0,0 +1,985 @@
+package heatshrink;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Heatshrink decoder working on {@link ByteBuffer}s, in the style of
+ * {@link java.nio.charset.CharsetDecoder}.  It keeps all of its state
+ * between calls, including any partial token, so input and output can be
+ * handed over in pieces of any size.  {@link HsInputStream} is built on
+ * top of this.
+ *
+ * @see HsEncoder
+ */
+public class HsDecoder {
+
+	/**
+	 * Backrefs shorter than this are copied a byte at a time
+	 */
+	private static final int BULK_COPY_MIN = 8;
+
+	/**
+	 * Size of the array direct output is decoded into before being copied
+	 */
+	private static final int STAGING_SIZE = 4096;
+
+	/**
+	 * State machine states.  Don't really need this but it's nice
+	 * to match the c code.
+	 */
+	enum State {
+		TAG_BIT,                /* tag bit */
+		YIELD_LITERAL,          /* ready to yield literal byte */
+		BACKREF_BOUNDS,         /* ready to yield backref bounds */
+		YIELD_BACKREF,          /* ready to yield back-reference */
+		BUFFER_EMPTY,           /* Not enough data to continue */
+	}
+
+	/**
+	 * window of data used for backref lookup
+	 */
+	private final byte[] window;
+	/**
+	 * number of bits in the window
+	 */
+	private final int windowSize;
+	/**
+	 * number of bits to lookahead
+	 */
+	private final int lookaheadSize;
+
+	/**
+	 * State machine state
+	 */
+	private State state;
+
+	/**
+	 * Compressed input being decoded, an array or else a buffer without
+	 * one that's read in place.  Only bound for the length of a call.
+	 */
+	private byte[] input;
+	private ByteBuffer inputBuffer;
+	private int inputPos;
+	private int inputLen;
+
+	/**
+	 * Whether the last decode ran out of input rather than room, and
+	 * whether {@link #finish()} was called
+	 */
+	private boolean stalled;
+	private boolean finishRequested;
+
+	/**
+	 * Whether one byte backrefs are sync markers
+	 */
+	private boolean syncMarkers;
+
+	/**
+	 * Bits taken from the input but not consumed yet.  The low
+	 * <code>bitCount</code> bits of <code>bitBuffer</code> are valid,
+	 * next bit first.
+	 */
+	private long bitBuffer;
+	private int bitCount;
+
+	/**
+	 * Current backref position
+	 */
+	private int windowPos;
+
+	/**
+	 * backref read index and count
+	 */
+	private int outputCount;
+	private int outputIndex;
+
+	/**
+	 * decode() and skip() tmps.  The staging array is only made for direct output.
+	 */
+	private final Result dr = new Result();
+	private final byte[] skipTmp = new byte[1];
+	private byte[] outputStaging;
+
+	/**
+	 * Preset window contents, or null to start with zeros
+	 */
+	private byte[] dictionary;
+
+	/**
+	 * Counters, or null to count nothing
+	 */
+	private HsStats stats;
+
+	/**
+	 * Creates a decoder.
+	 *
+	 * @param windowSize The window size (in bits).  Must match the encoder.
+	 * @param lookaheadSize The lookahead size (in bits).  Must match the encoder.
+	 */
+	public HsDecoder(int windowSize, int lookaheadSize) {
+		HsEncoder.checkSizes(windowSize, lookaheadSize);
+		this.window = new byte[1 << windowSize];
+		this.windowSize = windowSize;
+		this.lookaheadSize = lookaheadSize;
+		reset();
+	}
+
+	/**
+	 * Decode as much of <code>src</code> as possible into <code>dst</code>.
+	 * Every byte taken from <code>src</code> is kept until it's decoded so
+	 * a token split across calls is picked up where it left off.  Either
+	 * buffer may be direct.  Input is always read in place.  Output goes
+	 * straight into a heap buffer's array, but the window lives on heap
+	 * so direct output is decoded into a small array and then copied.
+	 *
+	 * @param src the encoded bytes
+	 * @param dst where to put the decoded bytes
+	 * @return {@link HsResult#UNDERFLOW} once all of <code>src</code> has
+	 *         been decoded or {@link HsResult#OVERFLOW} if <code>dst</code>
+	 *         filled up while there may be more to decode.  Either way,
+	 *         call again with more.
+	 */
+	public HsResult decode(ByteBuffer src, ByteBuffer dst) {
+		while (dst.hasRemaining()) {
+			if (src.hasArray()) {
+				bindInput(src.array(), src.arrayOffset() + src.position(), src.remaining());
+			} else {
+				bindInput(src);
+			}
+
+			if (dst.hasArray()) {
+				decode(dr.set(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining()));
+				dst.position(dr.off - dst.arrayOffset());
+			} else {
+				if (outputStaging == null) {
+					outputStaging = new byte[STAGING_SIZE];
+				}
+				decode(dr.set(outputStaging, 0, Math.min(dst.remaining(), outputStaging.length)));
+				dst.put(outputStaging, 0, dr.off);
+			}
+
+			// hand back whatever didn't make it into the bit buffer
+			src.position(src.hasArray() ? inputPos - src.arrayOffset() : inputPos);
+			bindInput(null, 0, 0);
+
+			if (!src.hasRemaining() && dst.hasRemaining()) {
+				return HsResult.UNDERFLOW;
+			}
+		}
+		return src.hasRemaining() || bitCount > 0 || state != State.TAG_BIT
+				? HsResult.OVERFLOW
+				: HsResult.UNDERFLOW;
+	}
+
+	/**
+	 * Set the input for {@link #decode(byte[], int, int)}.  The array is
+	 * used in place, so leave it alone until {@link #needsInput()}.
+	 *
+	 * @param b the encoded bytes
+	 * @param off where they start
+	 * @param len how many there are
+	 */
+	public void setInput(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		bindInput(b, off, len);
+	}
+
+	/**
+	 * @param b the encoded bytes
+	 * @see #setInput(byte[], int, int)
+	 */
+	public void setInput(byte[] b) {
+		setInput(b, 0, b.length);
+	}
+
+	/**
+	 * @return true if nothing more can be decoded without more input
+	 */
+	public boolean needsInput() {
+		return stalled;
+	}
+
+	/**
+	 * @return the number of input bytes not taken yet
+	 */
+	public int getRemaining() {
+		return inputLen - inputPos;
+	}
+
+	/**
+	 * Say that the current input is the last.  Heatshrink data doesn't
+	 * mark its own end so this is the only way {@link #finished()} can
+	 * tell.
+	 */
+	public void finish() {
+		finishRequested = true;
+	}
+
+	/**
+	 * @return true once {@link #finish()} was called and everything
+	 *         has been decoded
+	 */
+	public boolean finished() {
+		return finishRequested && stalled;
+	}
+
+	/**
+	 * Decode input from {@link #setInput(byte[], int, int)} into
+	 * <code>b</code>.  Never blocks.  A return of 0 means more input is
+	 * needed, or <code>len</code> was 0.
+	 *
+	 * @param b where to put the decoded bytes
+	 * @param off where to start
+	 * @param len the most to write
+	 * @return the number of decoded bytes written
+	 */
+	public int decode(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		decode(dr.set(b, off, len));
+		return dr.off - off;
+	}
+
+	/**
+	 * @param b where to put the decoded bytes
+	 * @return the number of decoded bytes written
+	 * @see #decode(byte[], int, int)
+	 */
+	public int decode(byte[] b) {
+		return decode(b, 0, b.length);
+	}
+
+	/**
+	 * Decode and throw away up to <code>n</code> bytes of input from
+	 * {@link #setInput(byte[], int, int)}.  Only the window is written
+	 * so this is much cheaper than decoding into a scratch array.
+	 *
+	 * @param n the number of decoded bytes to skip
+	 * @return the number of decoded bytes skipped.  Less than
+	 *         <code>n</code> means more input is needed.
+	 */
+	public long skip(long n) {
+		HsStats stats = this.stats;
+		long start = stats != null ? System.nanoTime() : 0;
+		int startInputPos = inputPos;
+		long skipped = 0;
+		while (skipped < n) {
+			if (state == State.TAG_BIT) {
+				int count = skipTokens((int) Math.min(n - skipped, Integer.MAX_VALUE));
+				if (count > 0) {
+					skipped += count;
+					continue;
+				}
+			}
+			if (state == State.YIELD_BACKREF) {
+				int count = (int) Math.min(n - skipped, outputCount);
+				copyInWindow(outputIndex, count);
+				outputCount -= count;
+				skipped += count;
+				if (outputCount == 0) {
+					state = State.TAG_BIT;
+				}
+				continue;
+			}
+
+			// a token split across inputs, take it a piece at a time
+			State lastState = state;
+			switch (lastState) {
+				case TAG_BIT:
+					state = readTagBit();
+					break;
+				case YIELD_LITERAL:
+					state = readLiteral(dr.set(skipTmp, 0, 1));
+					if (state != State.BUFFER_EMPTY) {
+						skipped++;
+					}
+					break;
+				case BACKREF_BOUNDS:
+					state = readBackrefBounds();
+					break;
+				default:
+					break;
+			}
+			if (state == State.BUFFER_EMPTY) {
+				state = lastState;
+				break;
+			}
+		}
+		stalled = skipped < n;
+		if (stats != null) {
+			count(stats, start, startInputPos, skipped);
+		}
+		return skipped;
+	}
+
+	/**
+	 * Start or stop counting.  The counters carry on across
+	 * {@link #reset()}.
+	 *
+	 * @param stats where to count or <code>null</code> to stop
+	 */
+	public void setStats(HsStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @return the counters or <code>null</code> if not counting
+	 */
+	public HsStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Treat one byte backrefs as the sync markers written by
+	 * {@link HsOutputStream#syncFlush()} and skip to the next byte when
+	 * one turns up.  Encoders never write one byte backrefs as data, see
+	 * <code>HsEncoder.MIN_SYNC_BITS</code> for why.  Kept across
+	 * {@link #reset()}.
+	 *
+	 * @param syncMarkers whether to look for sync markers
+	 */
+	public void setSyncMarkers(boolean syncMarkers) {
+		if (syncMarkers && windowSize + lookaheadSize < HsEncoder.MIN_SYNC_BITS) {
+			throw new IllegalStateException("No sync markers with " + windowSize + "/" + lookaheadSize);
+		}
+		this.syncMarkers = syncMarkers;
+	}
+
+	/**
+	 * @return whether one byte backrefs are sync markers
+	 */
+	public boolean isSyncMarkers() {
+		return syncMarkers;
+	}
+
+	/**
+	 * Prepare this for reuse
+	 */
+	public void reset() {
+		state = State.TAG_BIT;
+		outputCount = 0;
+		outputIndex = 0;
+		bindInput(null, 0, 0);
+		stalled = true;
+		finishRequested = false;
+		bitBuffer = 0;
+		bitCount = 0;
+		// only what was written since the last reset needs clearing
+		Arrays.fill(window, 0, windowPos >= 0 && windowPos < window.length ? windowPos : window.length, (byte)0);
+		windowPos = 0;
+		if (dictionary != null) {
+			System.arraycopy(dictionary, 0, window, window.length - dictionary.length, dictionary.length);
+		}
+	}
+
+	/**
+	 * Reset and drop the dictionary, sync markers and stats too, so this
+	 * works like a new decoder
+	 */
+	void resetAll() {
+		stats = null;
+		syncMarkers = false;
+		if (dictionary != null) {
+			setDictionary(null);
+		} else {
+			reset();
+		}
+	}
+
+	/**
+	 * Start every stream from a preset dictionary instead of an empty
+	 * window, so backrefs can reach into it from the first byte.  It
+	 * must be the same dictionary the encoder was given.  Only the last
+	 * window's worth of it is used.  This resets the decoder and is kept
+	 * across {@link #reset()}.
+	 *
+	 * @param b the dictionary, or <code>null</code> for none
+	 * @param off where it starts
+	 * @param len how long it is
+	 * @see HsEncoder#setDictionary(byte[], int, int)
+	 * @see DictionaryTrainer
+	 */
+	public void setDictionary(byte[] b, int off, int len) {
+		if (b == null) {
+			dictionary = null;
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		} else {
+			int n = Math.min(len, window.length);
+			dictionary = Arrays.copyOfRange(b, off + len - n, off + len);
+		}
+		// the old dictionary may be anywhere in the window
+		windowPos = -1;
+		reset();
+	}
+
+	/**
+	 * @param b the dictionary, or <code>null</code> for none
+	 * @see #setDictionary(byte[], int, int)
+	 */
+	public void setDictionary(byte[] b) {
+		setDictionary(b, 0, b == null ? 0 : b.length);
+	}
+
+	/**
+	 * Bind the compressed input to decode next
+	 */
+	void bindInput(byte[] b, int off, int len) {
+		stalled = false;
+		input = b;
+		inputBuffer = null;
+		inputPos = off;
+		inputLen = off + len;
+	}
+
+	/**
+	 * Bind a buffer without an array, such as a direct one, to read in
+	 * place from its position to its limit.  Never used with
+	 * {@link #decodeInto(byte[], int, int)}.
+	 */
+	private void bindInput(ByteBuffer b) {
+		stalled = false;
+		input = null;
+		inputBuffer = b;
+		inputPos = b.position();
+		inputLen = b.limit();
+	}
+
+	/**
+	 * @return the number of whole input bytes taken but not decoded yet
+	 */
+	int getBufferedBytes() {
+		return (bitCount >>> 3) + inputLen - inputPos;
+	}
+
+	/**
+	 * Decode the bound input into <code>rr</code> until either the input
+	 * runs out or <code>rr</code> is full.
+	 */
+	void decode(Result rr) {
+		HsStats stats = this.stats;
+		long start = stats != null ? System.nanoTime() : 0;
+		int startInputPos = inputPos;
+		int startOff = rr.off;
+		while(rr.off < rr.end) {
+			if (state == State.TAG_BIT) {
+				decodeTokens(rr);
+				if (rr.off == rr.end) {
+					break;
+				}
+			}
+
+			State lastState = state;
+
+			switch (lastState) {
+				case TAG_BIT:
+					state = readTagBit();
+					break;
+				case YIELD_LITERAL:
+					state = readLiteral(rr);
+					break;
+				case BACKREF_BOUNDS:
+					state = readBackrefBounds();
+					break;
+				case YIELD_BACKREF:
+					state = readBackref(rr);
+					break;
+				case BUFFER_EMPTY:
+				default:
+					break;
+			}
+
+			if(state == State.BUFFER_EMPTY) {
+				state = lastState;
+				break;
+			}
+		}
+		stalled = rr.off < rr.end;
+		if (stats != null) {
+			count(stats, start, startInputPos, rr.off - startOff);
+		}
+	}
+
+	private void count(HsStats stats, long start, int startInputPos, long decoded) {
+		stats.bytesIn += inputPos - startInputPos;
+		stats.bytesOut += decoded;
+		stats.nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * @return true if nothing has been decoded since the last reset
+	 */
+	boolean atStart() {
+		return windowPos == 0 && state == State.TAG_BIT && outputCount == 0;
+	}
+
+	/**
+	 * Decode the bound input straight into <code>b</code>, using the
+	 * bytes already decoded there as the window instead of
+	 * {@link #window}.  Only for a decoder at the start of a stream and
+	 * every call must pass the same array and range.  Before returning
+	 * the newly decoded bytes that are still in reach are copied to the
+	 * window, so decoding can carry on as normal afterwards.
+	 *
+	 * @return the number of bytes decoded into <code>b</code> so far
+	 */
+	int decodeInto(byte[] b, int off, int len) {
+		HsStats stats = this.stats;
+		long start = stats != null ? System.nanoTime() : 0;
+		int startInputPos = inputPos;
+		int startPos = windowPos;
+		int pos = windowPos;
+		long buf = bitBuffer;
+		int count = bitCount;
+		int backrefBits = 1 + windowSize + lookaheadSize;
+		int tokenBits = Math.max(9, backrefBits);
+		int indexMask = (1 << windowSize) - 1;
+		int lookaheadMask = (1 << lookaheadSize) - 1;
+		boolean sync = syncMarkers;
+
+		while (pos < len) {
+			if (count < tokenBits) {
+				bitBuffer = buf;
+				bitCount = count;
+				refill();
+				buf = bitBuffer;
+				count = bitCount;
+				// the last tokens may be shorter than tokenBits, so go by the tag
+				if (count < tokenBits && (count == 0
+						|| count < (((buf >>> (count - 1)) & 1) != 0 ? 9 : backrefBits))) {
+					break;
+				}
+			}
+
+			if (((buf >>> (count - 1)) & 1) != 0) {
+				count -= 9;
+				if (stats != null) {
+					stats.literals++;
+				}
+				b[off + pos++] = (byte) (buf >>> count);
+			} else {
+				count -= backrefBits;
+				long token = buf >>> count;
+				int index = (int) ((token >>> lookaheadSize) & indexMask) + 1;
+				int n = (int) (token & lookaheadMask) + 1;
+				if (n == 1 && sync) {
+					// sync marker, the rest of the byte is padding
+					count -= count & 7;
+					continue;
+				}
+				if (stats != null) {
+					stats.backref(index, n);
+				}
+				int copy = Math.min(n, len - pos);
+				int dst = off + pos;
+				if (index > pos) {
+					// reaches back before the stream started, into the zeros or dictionary
+					for (int i = 0; i < copy; i++) {
+						b[dst + i] = pos + i < index ? window[(pos + i - index) & indexMask] : b[dst + i - index];
+					}
+				} else if (copy <= index) {
+					System.arraycopy(b, dst - index, b, dst, copy);
+				} else {
+					for (int i = 0; i < copy; i++) {
+						b[dst + i] = b[dst + i - index];
+					}
+				}
+				pos += copy;
+				if (copy < n) {
+					outputIndex = index;
+					outputCount = n - copy;
+					state = State.YIELD_BACKREF;
+				}
+			}
+		}
+
+		windowPos = pos;
+		bitBuffer = buf;
+		bitCount = count;
+		// copy what's new to the window in case the next call isn't this
+		int from = Math.max(startPos, pos - window.length);
+		int first = Math.min(pos - from, window.length - (from & indexMask));
+		System.arraycopy(b, off + from, window, from & indexMask, first);
+		System.arraycopy(b, off + from + first, window, 0, pos - from - first);
+		stalled = pos < len;
+		if (stats != null) {
+			count(stats, start, startInputPos, pos - startPos);
+		}
+		return pos;
+	}
+
+	/**
+	 * Throw away compressed input, starting with whatever is left of
+	 * the current byte
+	 *
+	 * @param n the number of compressed bytes to skip
+	 * @return the number of bytes skipped
+	 */
+	long skipInput(long n) {
+		// drop what's left of the current byte then any whole bytes already taken
+		bitCount -= bitCount & 7;
+		long toSkip = Math.min(n, bitCount >>> 3);
+		bitCount -= toSkip << 3;
+		n -= toSkip;
+
+		long inputSkip = Math.min(n, inputLen - inputPos);
+		inputPos += inputSkip;
+		return toSkip + inputSkip;
+	}
+
+	/**
+	 * Decode as many whole tokens as are buffered and fit in
+	 * <code>rr</code> in one tight loop.  It stops at the first token
+	 * that isn't fully buffered and leaves it to the state machine, or in
+	 * <code>YIELD_BACKREF</code> if a backref doesn't fit.
+	 */
+	private void decodeTokens(Result rr) {
+		byte[] b = rr.b;
+		int off = rr.off;
+		int end = rr.end;
+		byte[] window = this.window;
+		int mask = window.length - 1;
+		int pos = windowPos;
+		long buf = bitBuffer;
+		int count = bitCount;
+		int backrefBits = 1 + windowSize + lookaheadSize;
+		// enough for either kind of token
+		int tokenBits = Math.max(9, backrefBits);
+		int lookaheadMask = (1 << lookaheadSize) - 1;
+		boolean sync = syncMarkers;
+		HsStats stats = this.stats;
+
+		while (off < end) {
+			if (count < tokenBits) {
+				bitBuffer = buf;
+				bitCount = count;
+				refill();
+				buf = bitBuffer;
+				count = bitCount;
+				if (count < tokenBits) {
+					break;
+				}
+			}
+
+			if (((buf >>> (count - 1)) & 1) != 0) {
+				count -= 9;
+				if (stats != null) {
+					stats.literals++;
+				}
+				byte c = (byte) (buf >>> count);
+				window[pos++ & mask] = c;
+				b[off++] = c;
+			} else {
+				count -= backrefBits;
+				long token = buf >>> count;
+				int index = (int) ((token >>> lookaheadSize) & mask) + 1;
+				int n = (int) (token & lookaheadMask) + 1;
+				if (n == 1 && sync) {
+					// sync marker, the rest of the byte is padding
+					count -= count & 7;
+					continue;
+				}
+				if (stats != null) {
+					stats.backref(index, n);
+				}
+				if (n > end - off) {
+					outputIndex = index;
+					outputCount = n;
+					state = State.YIELD_BACKREF;
+					break;
+				}
+				if (n < BULK_COPY_MIN) {
+					for (int i = 0; i < n; i++) {
+						byte c = window[(pos - index) & mask];
+						b[off++] = c;
+						window[pos++ & mask] = c;
+					}
+				} else {
+					copyBackref(b, off, n, index, pos, mask);
+					off += n;
+					pos += n;
+				}
+			}
+		}
+
+		rr.off = off;
+		windowPos = pos;
+		bitBuffer = buf;
+		bitCount = count;
+	}
+
+	/**
+	 * Like {@link #decodeTokens(Result)} but only writes the window.
+	 * Stops after at most <code>max</code> bytes.
+	 *
+	 * @return the number of decoded bytes skipped
+	 */
+	private int skipTokens(int max) {
+		byte[] window = this.window;
+		int mask = window.length - 1;
+		long buf = bitBuffer;
+		int count = bitCount;
+		int backrefBits = 1 + windowSize + lookaheadSize;
+		int tokenBits = Math.max(9, backrefBits);
+		int lookaheadMask = (1 << lookaheadSize) - 1;
+		boolean sync = syncMarkers;
+		HsStats stats = this.stats;
+		int skipped = 0;
+
+		while (skipped < max) {
+			if (count < tokenBits) {
+				bitBuffer = buf;
+				bitCount = count;
+				refill();
+				buf = bitBuffer;
+				count = bitCount;
+				if (count < tokenBits) {
+					break;
+				}
+			}
+
+			if (((buf >>> (count - 1)) & 1) != 0) {
+				count -= 9;
+				if (stats != null) {
+					stats.literals++;
+				}
+				window[windowPos++ & mask] = (byte) (buf >>> count);
+				skipped++;
+			} else {
+				count -= backrefBits;
+				long token = buf >>> count;
+				int index = (int) ((token >>> lookaheadSize) & mask) + 1;
+				int n = (int) (token & lookaheadMask) + 1;
+				if (n == 1 && sync) {
+					// sync marker, the rest of the byte is padding
+					count -= count & 7;
+					continue;
+				}
+				if (stats != null) {
+					stats.backref(index, n);
+				}
+				if (n > max - skipped) {
+					outputIndex = index;
+					outputCount = n;
+					state = State.YIELD_BACKREF;
+					break;
+				}
+				copyInWindow(index, n);
+				skipped += n;
+			}
+		}
+
+		bitBuffer = buf;
+		bitCount = count;
+		return skipped;
+	}
+
+	/**
+	 * Append <code>count</code> backref bytes to the window without
+	 * copying them anywhere else
+	 */
+	private void copyInWindow(int index, int count) {
+		int mask = window.length - 1;
+		int dst = windowPos & mask;
+		int src = (windowPos - index) & mask;
+		if (count <= index && count >= BULK_COPY_MIN
+				&& src + count <= window.length && dst + count <= window.length) {
+			System.arraycopy(window, src, window, dst, count);
+		} else {
+			for (int i = 0; i < count; i++) {
+				window[(dst + i) & mask] = window[(src + i) & mask];
+			}
+		}
+		windowPos += count;
+	}
+
+	private State readTagBit() {
+		int bits = getBits(1);  // get tag bit
+		if(bits == -1) {
+			return State.BUFFER_EMPTY;
+		} else if (bits != 0) {
+			return State.YIELD_LITERAL;
+		}
+		outputCount = outputIndex = 0;
+		return State.BACKREF_BOUNDS;
+	}
+
+	private State readBackrefBounds() {
+		// take both fields or neither so a retry starts at the index
+		if(!hasBits(windowSize + lookaheadSize)) return State.BUFFER_EMPTY;
+		outputIndex = getBits(windowSize) + 1;
+		outputCount = getBits(lookaheadSize) + 1;
+		if (outputCount == 1 && syncMarkers) {
+			// sync marker, the rest of the byte is padding
+			bitCount -= bitCount & 7;
+			outputCount = outputIndex = 0;
+			return State.TAG_BIT;
+		}
+		if (stats != null) {
+			stats.backref(outputIndex, outputCount);
+		}
+
+		return State.YIELD_BACKREF;
+	}
+
+	private State readBackref(Result rr) {
+		int count = Math.min(rr.end - rr.off, outputCount);
+		if (count > 0) {
+			int mask = (1 << windowSize) - 1;
+			if (count < BULK_COPY_MIN) {
+				for (int i = 0; i < count; i++) {
+					byte c = window[(windowPos - outputIndex) & mask];
+					rr.b[rr.off++] = c;
+					window[windowPos++ & mask] = c;
+				}
+			} else {
+				copyBackref(rr.b, rr.off, count, outputIndex, windowPos, mask);
+				rr.off += count;
+				windowPos += count;
+			}
+			outputCount -= count;
+			if (outputCount == 0) {
+				return State.TAG_BIT;
+			}
+		}
+		return State.YIELD_BACKREF;
+	}
+
+	/**
+	 * Copy <code>count</code> backref bytes to <code>b</code> and then
+	 * append them to the window at <code>pos</code>.  Anything past
+	 * <code>index</code> repeats what was just copied, so it's filled
+	 * from <code>b</code> itself, doubling up the copy when the repeat
+	 * is long.
+	 */
+	private void copyBackref(byte[] b, int off, int count, int index, int pos, int mask) {
+		int direct = Math.min(count, index);
+		int src = (pos - index) & mask;
+		int first = Math.min(direct, window.length - src);
+		System.arraycopy(window, src, b, off, first);
+		if (first < direct) {
+			System.arraycopy(window, 0, b, off + first, direct - first);
+		}
+		if (count - direct < BULK_COPY_MIN * 4) {
+			for (int i = off + direct, end = off + count; i < end; i++) {
+				b[i] = b[i - direct];
+			}
+		} else {
+			for (int done = direct; done < count; done += done) {
+				System.arraycopy(b, off, b, off + done, Math.min(done, count - done));
+			}
+		}
+
+		int dst = pos & mask;
+		first = Math.min(count, window.length - dst);
+		System.arraycopy(b, off, window, dst, first);
+		if (first < count) {
+			System.arraycopy(b, off + first, window, 0, count - first);
+		}
+	}
+
+	private State readLiteral(Result rr) {
+		if (rr.off < rr.end) {
+			int bits = getBits(8);
+			if (bits == -1) return State.BUFFER_EMPTY;
+			int mask = (1 << windowSize)  - 1;
+			byte c = (byte) (bits & 0xff);
+			if (stats != null) {
+				stats.literals++;
+			}
+			window[windowPos++ & mask] = c;
+			rr.b[rr.off++] = c;
+			return State.TAG_BIT;
+		}
+		return State.YIELD_LITERAL;
+	}
+
+	/**
+	 * @return true if <code>numBits</code> can be read from the bound input
+	 */
+	boolean hasBits(int numBits) {
+		if (bitCount < numBits) {
+			refill();
+		}
+		return bitCount >= numBits;
+	}
+
+	/**
+	 * Read <code>numBits</code> from the bound input
+	 *
+	 * @return the bits or -1 if there aren't enough
+	 */
+	int getBits(int numBits) {
+		if (!hasBits(numBits)) {
+			return -1;
+		}
+		bitCount -= numBits;
+		return (int) ((bitBuffer >>> bitCount) & ((1L << numBits) - 1));
+	}
+
+	/**
+	 * Move as many bytes as will fit from the input to the
+	 * bit buffer.  The fused loops keep the bit buffer in locals so
+	 * they store it before calling this and load it after.
+	 */
+	private void refill() {
+		if (inputBuffer != null) {
+			refillFromBuffer();
+			return;
+		}
+		byte[] b = input;
+		int pos = inputPos;
+		int len = inputLen;
+		long buf = bitBuffer;
+		int count = bitCount;
+		if (count <= 32 && len - pos >= 4) {
+			buf = (buf << 32)
+					| ((b[pos] & 0xffL) << 24)
+					| ((b[pos + 1] & 0xff) << 16)
+					| ((b[pos + 2] & 0xff) << 8)
+					| (b[pos + 3] & 0xff);
+			pos += 4;
+			count += 32;
+		}
+		while (count <= 56 && pos < len) {
+			buf = (buf << 8) | (b[pos++] & 0xff);
+			count += 8;
+		}
+		inputPos = pos;
+		bitBuffer = buf;
+		bitCount = count;
+	}
+
+	/**
+	 * {@link #refill()} from a buffer bound in place
+	 */
+	private void refillFromBuffer() {
+		ByteBuffer b = inputBuffer;
+		int pos = inputPos;
+		int len = inputLen;
+		long buf = bitBuffer;
+		int count = bitCount;
+		if (count <= 32 && len - pos >= 4) {
+			int v = b.getInt(pos);
+			buf = (buf << 32) | ((b.order() == ByteOrder.BIG_ENDIAN ? v : Integer.reverseBytes(v)) & 0xffffffffL);
+			pos += 4;
+			count += 32;
+		}
+		while (count <= 56 && pos < len) {
+			buf = (buf << 8) | (b.get(pos++) & 0xff);
+			count += 8;
+		}
+		inputPos = pos;
+		bitBuffer = buf;
+		bitCount = count;
+	}
+}
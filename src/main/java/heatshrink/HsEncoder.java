@@ -0,0 +1,906 @@
+package heatshrink;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Heatshrink encoder working on {@link ByteBuffer}s, in the style of
+ * {@link java.nio.charset.CharsetEncoder}.  It keeps all of its state
+ * between calls so input and output can be handed over in pieces of any
+ * size.  {@link HsOutputStream} is built on top of this.
+ *
+ * @see HsDecoder
+ */
+public class HsEncoder {
+
+	/**
+	 * Fastest compression level.  Greedy with very short match searches.
+	 */
+	public static final int BEST_SPEED = 1;
+	/**
+	 * Default compression level.  Greedy with an exhaustive match search,
+	 * which gives the same output as the reference heatshrink encoder.
+	 */
+	public static final int DEFAULT_COMPRESSION = 6;
+	/**
+	 * Best compression level.  Exhaustive match search with an optimal parse.
+	 */
+	public static final int BEST_COMPRESSION = 9;
+
+	/**
+	 * Window and lookahead size limits (in bits), the same as the reference
+	 * heatshrink.  The lookahead must also be smaller than the window.
+	 */
+	public static final int MIN_WINDOW_SIZE = 4;
+	public static final int MAX_WINDOW_SIZE = 15;
+	public static final int MIN_LOOKAHEAD_SIZE = 3;
+
+	/**
+	 * Rebase the match index once absolute positions get this big
+	 */
+	private static final int MAX_WINDOW_OFFSET = 1 << 30;
+
+	/**
+	 * The optimal parse doesn't search again inside matches longer than this
+	 */
+	private static final int OPTIMAL_FOLLOW_LENGTH = 32;
+
+	/**
+	 * A backref is only written when its length is more than
+	 * <code>breakEven = (1 + windowBits + lookaheadBits) / 8</code>, and
+	 * the optimal parse never writes one shorter than 2 either.  Once the
+	 * sizes add up to this, breakEven is at least 1, so a one byte backref
+	 * is never data and can be the sync marker.  Every valid pair of sizes
+	 * reaches it; the checks against it are only a guard.
+	 */
+	static final int MIN_SYNC_BITS = 7;
+
+	/**
+	 * How hard each level works to find matches.  Indexed by level.
+	 */
+	private static final Level[] LEVELS = {
+			null,
+			new Level(4, 8, ParseMode.GREEDY),
+			new Level(8, 16, ParseMode.GREEDY),
+			new Level(16, 32, ParseMode.GREEDY),
+			new Level(32, 64, ParseMode.GREEDY),
+			new Level(128, 128, ParseMode.GREEDY),
+			new Level(Integer.MAX_VALUE, Integer.MAX_VALUE, ParseMode.GREEDY),
+			new Level(128, 128, ParseMode.LAZY),
+			new Level(1024, 256, ParseMode.LAZY),
+			new Level(Integer.MAX_VALUE, Integer.MAX_VALUE, ParseMode.OPTIMAL),
+	};
+
+	/**
+	 * How the encoder picks between literals and backrefs.  The decoder
+	 * doesn't care which one was used.
+	 */
+	public enum ParseMode {
+		/**
+		 * Take the longest match at each position
+		 */
+		GREEDY,
+		/**
+		 * Take the longest match unless the next position has a longer one
+		 */
+		LAZY,
+		/**
+		 * Pick the cheapest sequence of literals and backrefs for each
+		 * block of input.  Slowest, smallest output.
+		 */
+		OPTIMAL,
+	}
+
+	private static final class Level {
+		/**
+		 * Max number of hash chain entries to check per position
+		 */
+		final int maxChain;
+		/**
+		 * Stop searching once a match is at least this long
+		 */
+		final int niceLength;
+		/**
+		 * Default parse mode for the level
+		 */
+		final ParseMode parseMode;
+
+		Level(int maxChain, int niceLength, ParseMode parseMode) {
+			this.maxChain = maxChain;
+			this.niceLength = niceLength;
+			this.parseMode = parseMode;
+		}
+	}
+
+	/**
+	 * Window size (in bytes)
+	 */
+	private final int windowSize;
+	/**
+	 * Backref size (in bits)
+	 */
+	private final int lookaheadSize;
+	/**
+	 * Window size (in bits available)
+	 */
+	private final int windowBits;
+	/**
+	 * Backref size (in bits available)
+	 */
+	private final int lookaheadBits;
+
+	/**
+	 * Bits waiting to be written.  The low <code>bitCount</code> bits
+	 * of <code>bitBuffer</code> are pending, oldest first.
+	 */
+	private long bitBuffer;
+	private int bitCount;
+
+	/**
+	 * Encoded bytes waiting to be handed out.  Big enough for a whole
+	 * block so encoding never stalls part way through one.
+	 */
+	private final byte[] outputBuffer;
+	private int outputStart;
+	private int outputPos;
+
+	/**
+	 * window and position
+	 */
+	private final byte[] window;
+	private int windowPos;
+	private boolean historyDirty;
+
+	/**
+	 * Preset history, or null to start with zeros
+	 */
+	private byte[] dictionary;
+
+	/**
+	 * Match index.  Every window position is hashed on its first two
+	 * bytes.  <code>head</code> holds the most recent position for each
+	 * hash and <code>prev</code> links a position to the previous one with
+	 * the same hash, so the chains are walked nearest first just like the
+	 * old backwards scan.  Positions are absolute (window index plus
+	 * <code>windowOffset</code>) so shifting the window doesn't touch the
+	 * index.
+	 */
+	private final int[] head;
+	private final int[] prev;
+	private final int hashShift;
+	private int windowOffset;
+	private int indexPos;
+	private int matchPos;
+
+	/**
+	 * Compression level settings
+	 */
+	private final Level level;
+	private final ParseMode parseMode;
+
+	/**
+	 * Optimal parse scratch.  The longest match, its window index and the
+	 * cheapest cost (in bits) to the end of the block for each position.
+	 */
+	private final int[] optMatchLen;
+	private final int[] optMatchPos;
+	private final int[] optCost;
+
+	/**
+	 * Match found at the next position by the lazy check
+	 */
+	private int lazyScanPos = -1;
+	private int lazyMatchLen;
+	private int lazyMatchPos;
+
+	/**
+	 * Input given to {@link #setInput(byte[], int, int)} and whether
+	 * {@link #finish()} was called and carried out
+	 */
+	private final Result input = new Result();
+	private boolean finishRequested;
+	private boolean finishDone;
+
+	/**
+	 * Counters, or null to count nothing
+	 */
+	private HsStats stats;
+
+	/**
+	 * @return whether a window and lookahead size pair is in range
+	 */
+	static boolean isValidSize(int windowSize, int lookaheadSize) {
+		return windowSize >= MIN_WINDOW_SIZE && windowSize <= MAX_WINDOW_SIZE
+				&& lookaheadSize >= MIN_LOOKAHEAD_SIZE && lookaheadSize < windowSize;
+	}
+
+	static void checkSizes(int windowSize, int lookaheadSize) {
+		if (!isValidSize(windowSize, lookaheadSize)) {
+			throw new IllegalArgumentException("Invalid window and lookahead sizes " + windowSize + "/" + lookaheadSize);
+		}
+	}
+
+	/**
+	 * Creates an encoder using the default compression level.
+	 *
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @see HsOutputStream#HsOutputStream(OutputStream, int, int)
+	 */
+	public HsEncoder(int windowSize, int lookaheadSize) {
+		this(windowSize, lookaheadSize, DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates an encoder.
+	 *
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link #BEST_SPEED} to
+	 *              {@link #BEST_COMPRESSION}
+	 */
+	public HsEncoder(int windowSize, int lookaheadSize, int level) {
+		this(windowSize, lookaheadSize, level, null);
+	}
+
+	/**
+	 * Creates an encoder.
+	 *
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link #BEST_SPEED} to
+	 *              {@link #BEST_COMPRESSION}
+	 * @param parseMode How to choose between literals and backrefs or
+	 *                  <code>null</code> to use the level's default
+	 */
+	public HsEncoder(int windowSize, int lookaheadSize, int level, ParseMode parseMode) {
+		checkSizes(windowSize, lookaheadSize);
+		if (level < BEST_SPEED || level > BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		this.level = LEVELS[level];
+		this.parseMode = parseMode == null ? this.level.parseMode : parseMode;
+		this.window = new byte[2 << windowSize];
+		this.windowBits = windowSize;
+		this.lookaheadBits = lookaheadSize;
+		this.windowSize = 1 << windowBits;
+		this.lookaheadSize = 1 << lookaheadBits;
+		// a token never costs more than 9 bits per byte it covers
+		this.outputBuffer = new byte[(9 * this.windowSize >> 3) + 16];
+		int hashBits = Math.min(16, windowBits + 1);
+		this.head = new int[1 << hashBits];
+		this.prev = new int[this.window.length];
+		this.hashShift = 32 - hashBits;
+		if (this.parseMode == ParseMode.OPTIMAL) {
+			this.optMatchLen = new int[this.windowSize];
+			this.optMatchPos = new int[this.windowSize];
+			this.optCost = new int[this.windowSize + 1];
+		} else {
+			this.optMatchLen = this.optMatchPos = this.optCost = null;
+		}
+		Arrays.fill(head, -1);
+		resetIndex();
+	}
+
+	/**
+	 * Encode as much of <code>src</code> as possible into <code>dst</code>.
+	 * Input is buffered until a whole window is available so some or all
+	 * of it may not show up in <code>dst</code> until more input is given
+	 * or {@link #finish(ByteBuffer)} is called.  Either buffer may be
+	 * direct.  Input is bulk copied into the window and output out of
+	 * the output buffer, the same copies made for arrays, so there's no
+	 * extra staging either way.
+	 *
+	 * @param src the bytes to encode
+	 * @param dst where to put the encoded bytes
+	 * @return {@link HsResult#UNDERFLOW} once all of <code>src</code> has
+	 *         been taken or {@link HsResult#OVERFLOW} if <code>dst</code>
+	 *         filled up first.  Either way, call again with more.
+	 */
+	public HsResult encode(ByteBuffer src, ByteBuffer dst) {
+		while (drainOutput(dst)) {
+			if (!src.hasRemaining()) {
+				return HsResult.UNDERFLOW;
+			}
+			int n = Math.min(src.remaining(), windowSize - windowPos);
+			src.get(window, windowSize + windowPos, n);
+			windowPos += n;
+			if (windowPos == windowSize) {
+				encodeBlock(false);
+			}
+		}
+		return HsResult.OVERFLOW;
+	}
+
+	/**
+	 * Encode everything buffered so far and pad the output out to a
+	 * whole byte.  Call this until it returns
+	 * {@link HsResult#UNDERFLOW}.  The encoder can be used again
+	 * afterwards.
+	 *
+	 * @param dst where to put the encoded bytes
+	 * @return {@link HsResult#UNDERFLOW} once everything has been written
+	 *         or {@link HsResult#OVERFLOW} if <code>dst</code> filled up
+	 *         first
+	 */
+	public HsResult finish(ByteBuffer dst) {
+		if (!drainOutput(dst)) {
+			return HsResult.OVERFLOW;
+		}
+		encodeBlock(true);
+		return drainOutput(dst) ? HsResult.UNDERFLOW : HsResult.OVERFLOW;
+	}
+
+	/**
+	 * Set the input for {@link #encode(byte[], int, int)}.  The array is
+	 * used in place, so leave it alone until {@link #needsInput()}.
+	 *
+	 * @param b the bytes to encode
+	 * @param off where they start
+	 * @param len how many there are
+	 */
+	public void setInput(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+		input.set(b, off, len);
+	}
+
+	/**
+	 * @param b the bytes to encode
+	 * @see #setInput(byte[], int, int)
+	 */
+	public void setInput(byte[] b) {
+		setInput(b, 0, b.length);
+	}
+
+	/**
+	 * @return true if all of the input has been taken
+	 */
+	public boolean needsInput() {
+		return input.off == input.end;
+	}
+
+	/**
+	 * Say that the current input is the last.  Everything will be encoded
+	 * and padded out to a whole byte by {@link #encode(byte[], int, int)}.
+	 */
+	public void finish() {
+		finishRequested = true;
+	}
+
+	/**
+	 * @return true once {@link #finish()} was called and all of the
+	 *         output has been handed out
+	 */
+	public boolean finished() {
+		return finishDone && outputStart == outputPos;
+	}
+
+	/**
+	 * Encode input from {@link #setInput(byte[], int, int)} into
+	 * <code>b</code>.  Never blocks.  A return of 0 means more input (or
+	 * {@link #finish()}) is needed, or <code>len</code> was 0.
+	 *
+	 * @param b where to put the encoded bytes
+	 * @param off where to start
+	 * @param len the most to write
+	 * @return the number of encoded bytes written
+	 */
+	public int encode(byte[] b, int off, int len) {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int start = off;
+		int end = off + len;
+		while (true) {
+			int n = Math.min(end - off, outputPos - outputStart);
+			System.arraycopy(outputBuffer, outputStart, b, off, n);
+			off += n;
+			outputStart += n;
+			if (outputStart < outputPos) {
+				break;
+			}
+			outputStart = outputPos = 0;
+
+			if (input.off < input.end) {
+				if (fill(input)) {
+					encodeBlock(false);
+				}
+			} else if (finishRequested && !finishDone) {
+				encodeBlock(true);
+				finishDone = true;
+			} else {
+				break;
+			}
+		}
+		return off - start;
+	}
+
+	/**
+	 * @param b where to put the encoded bytes
+	 * @return the number of encoded bytes written
+	 * @see #encode(byte[], int, int)
+	 */
+	public int encode(byte[] b) {
+		return encode(b, 0, b.length);
+	}
+
+	/**
+	 * Start or stop counting.  The counters carry on across
+	 * {@link #reset()}.
+	 *
+	 * @param stats where to count or <code>null</code> to stop
+	 */
+	public void setStats(HsStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * @return the counters or <code>null</code> if not counting
+	 */
+	public HsStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Prepare this for reuse.  Anything buffered is discarded.
+	 */
+	public void reset() {
+		input.set(null, 0, 0);
+		finishRequested = false;
+		finishDone = false;
+		bitBuffer = 0;
+		bitCount = 0;
+		outputStart = 0;
+		outputPos = 0;
+		windowPos = 0;
+		lazyScanPos = -1;
+		clearHistory();
+		resetIndex();
+	}
+
+	/**
+	 * Reset and drop the dictionary and stats too, so this works like a
+	 * new encoder
+	 */
+	void resetAll() {
+		stats = null;
+		if (dictionary != null) {
+			setDictionary(null);
+		} else {
+			reset();
+		}
+	}
+
+	/**
+	 * The decoder starts with an empty window so matches must too.
+	 * Only history shifted in since the last reset needs clearing.
+	 */
+	private void clearHistory() {
+		int dictLen = dictionary == null ? 0 : dictionary.length;
+		if (historyDirty) {
+			Arrays.fill(window, 0, windowSize - dictLen, (byte) 0);
+			historyDirty = false;
+		}
+		if (dictLen > 0) {
+			System.arraycopy(dictionary, 0, window, windowSize - dictLen, dictLen);
+			historyDirty = true;
+		}
+	}
+
+	/**
+	 * Start every stream from a preset dictionary instead of an empty
+	 * window, so even a short message can be made of backrefs into it.
+	 * Decode with the same dictionary.  Only the last window's worth of it
+	 * is used, and the end of it is the easiest to reach.  This resets the
+	 * encoder and is kept across {@link #reset()}.
+	 *
+	 * @param b the dictionary, or <code>null</code> for none
+	 * @param off where it starts
+	 * @param len how long it is
+	 * @see HsDecoder#setDictionary(byte[], int, int)
+	 * @see DictionaryTrainer
+	 */
+	public void setDictionary(byte[] b, int off, int len) {
+		if (b == null) {
+			dictionary = null;
+		} else if (off < 0 || len < 0 || off > b.length - len) {
+			throw new IndexOutOfBoundsException();
+		} else {
+			int n = Math.min(len, windowSize);
+			dictionary = Arrays.copyOfRange(b, off + len - n, off + len);
+		}
+		// the old dictionary needs clearing too
+		historyDirty = true;
+		reset();
+	}
+
+	/**
+	 * @param b the dictionary, or <code>null</code> for none
+	 * @see #setDictionary(byte[], int, int)
+	 */
+	public void setDictionary(byte[] b) {
+		setDictionary(b, 0, b == null ? 0 : b.length);
+	}
+
+	/**
+	 * Copy as much pending output as fits to <code>dst</code>
+	 *
+	 * @return true if nothing is left pending
+	 */
+	private boolean drainOutput(ByteBuffer dst) {
+		int n = Math.min(dst.remaining(), outputPos - outputStart);
+		dst.put(outputBuffer, outputStart, n);
+		outputStart += n;
+		if (outputStart < outputPos) {
+			return false;
+		}
+		outputStart = outputPos = 0;
+		return true;
+	}
+
+	/**
+	 * Hand all pending output to <code>out</code>
+	 */
+	void writeOutput(OutputStream out) throws IOException {
+		if (outputPos > outputStart) {
+			out.write(outputBuffer, outputStart, outputPos - outputStart);
+		}
+		outputStart = outputPos = 0;
+	}
+
+	/**
+	 * Buffer bytes from <code>wr</code>
+	 *
+	 * @return true if the window is full and needs encoding
+	 */
+	boolean fill(Result wr) {
+		int rem = windowSize - windowPos;
+		if(rem > 0) {
+			rem = Math.min(rem, wr.len);
+			System.arraycopy(wr.b, wr.off, window, windowPos + windowSize, rem);
+			wr.off += rem;
+			wr.len -= rem;
+			windowPos += rem;
+		}
+		return windowPos == windowSize;
+	}
+
+	/**
+	 * Encode the buffered bytes into the output buffer.  Unless finishing,
+	 * the last lookahead's worth is held back to match against what comes
+	 * next.  Pending output must have been taken first.
+	 */
+	void encodeBlock(boolean finish) {
+		encodeBlock(finish, false);
+	}
+
+	/**
+	 * Like {@link #encodeBlock(boolean)}, but with <code>sync</code> set
+	 * everything buffered is encoded and padded out to a whole byte
+	 * without ending the stream or losing the window.  Unless the output
+	 * already ends on a byte boundary, a sync marker goes before the
+	 * padding: a one byte backref, which is never written as data (see
+	 * {@link #MIN_SYNC_BITS}).  Decoders skip the rest of the byte when they
+	 * see it.
+	 */
+	void encodeBlock(boolean finish, boolean sync) {
+		if (sync && windowBits + lookaheadBits < MIN_SYNC_BITS) {
+			throw new IllegalStateException("No sync markers with " + windowBits + "/" + lookaheadBits);
+		}
+		HsStats stats = this.stats;
+		long start = stats != null ? System.nanoTime() : 0;
+		int startPos = outputPos;
+		if(windowPos > 0) {
+			int scanPos = 0;
+			int breakEven = (1 + windowBits + lookaheadBits) / 8;
+			int lastPos = windowPos - (finish || sync ? 1 : lookaheadSize);
+			if (parseMode == ParseMode.OPTIMAL) {
+				scanPos = writeOptimal(lastPos);
+			} else {
+				for(; scanPos <= lastPos; scanPos++) {
+					scanPos = writeNext(scanPos, breakEven, lastPos);
+				}
+			}
+
+			if (stats != null) {
+				stats.bytesIn += Math.min(scanPos, windowPos);
+			}
+			shiftWindow(finish, scanPos);
+		} else if (finish) {
+			// nothing buffered, say after a sync, but the history still goes
+			shiftWindow(true, 0);
+		}
+		if (sync && (bitCount & 7) != 0) {
+			writeBits(1 + windowBits, 0);
+			writeBits(lookaheadBits, 0);
+		}
+		if(finish || sync) {
+			flushBits();
+		}
+		if (stats != null) {
+			stats.bytesOut += outputPos - startPos;
+			stats.nanos += System.nanoTime() - start;
+		}
+	}
+
+	private void shiftWindow(boolean finish, int scanPos) {
+		// Shift window down to prepare for more datas
+		if (!finish && scanPos <= windowPos) {
+			System.arraycopy(window, scanPos, window, 0, windowSize + windowPos - scanPos);
+			windowPos -= scanPos;
+			historyDirty = true;
+			windowOffset += scanPos;
+			if (windowOffset > MAX_WINDOW_OFFSET) {
+				rebaseIndex();
+			}
+		} else {
+			// the stream ends here so whatever follows starts afresh
+			windowPos = 0;
+			clearHistory();
+			resetIndex();
+		}
+	}
+
+	private int writeNext(int scanPos, int breakEven, int lastPos) {
+		int end = windowSize + scanPos;
+		int bestMatchLen;
+		int bestMatchPos;
+		if (scanPos == lazyScanPos) {
+			bestMatchLen = lazyMatchLen;
+			bestMatchPos = lazyMatchPos;
+		} else {
+			bestMatchLen = findMatch(end, Math.min(lookaheadSize, windowPos - scanPos));
+			bestMatchPos = matchPos;
+		}
+		lazyScanPos = -1;
+
+		if(bestMatchLen > breakEven && parseMode == ParseMode.LAZY
+				&& bestMatchLen < level.niceLength && scanPos < lastPos) {
+			// See if waiting a byte gets us something better
+			int nextMatchLen = findMatch(end + 1, Math.min(lookaheadSize, windowPos - scanPos - 1));
+			if (nextMatchLen > bestMatchLen) {
+				lazyScanPos = scanPos + 1;
+				lazyMatchLen = nextMatchLen;
+				lazyMatchPos = matchPos;
+				bestMatchLen = 0;
+			}
+		}
+
+		if(bestMatchLen > breakEven) {
+			writeBackref(end - bestMatchPos, bestMatchLen);
+			scanPos += bestMatchLen - 1;
+		} else {
+			writeLiteral(window[windowSize + scanPos]);
+		}
+		return scanPos;
+	}
+
+	/**
+	 * Encode positions <code>0..lastPos</code> using the cheapest mix of
+	 * literals and backrefs.  A backref costs the same number of bits no
+	 * matter how long or far back it is, so knowing the longest match at
+	 * each position is enough to find the cheapest parse with a simple
+	 * dynamic program run from the end of the block.  The parse covers
+	 * everything buffered so the tail of the block isn't shortchanged, but
+	 * only tokens starting at or before <code>lastPos</code> are written.
+	 *
+	 * @param lastPos the last position that must be encoded
+	 * @return the first position not encoded
+	 */
+	private int writeOptimal(int lastPos) {
+		int literalCost = 9;
+		int backrefCost = 1 + windowBits + lookaheadBits;
+		int[] matchLen = optMatchLen;
+		int[] cost = optCost;
+
+		int followEnd = 0;
+		for (int i = 0; i < windowPos; i++) {
+			if (i < followEnd) {
+				// inside a long match, follow it along rather than searching again
+				int end = windowSize + i;
+				int pos = optMatchPos[i - 1] + 1;
+				int len = matchLen[i - 1] - 1;
+				int maxMatchLen = Math.min(lookaheadSize, windowPos - i);
+				while (len < maxMatchLen && window[pos + len] == window[end + len]) {
+					len++;
+				}
+				matchLen[i] = len;
+				optMatchPos[i] = pos;
+			} else {
+				matchLen[i] = findMatch(windowSize + i, Math.min(lookaheadSize, windowPos - i));
+				optMatchPos[i] = matchPos;
+				if (matchLen[i] > OPTIMAL_FOLLOW_LENGTH) {
+					followEnd = i + matchLen[i];
+				}
+			}
+		}
+
+		cost[windowPos] = 0;
+		for (int i = windowPos - 1; i >= 0; i--) {
+			int best = literalCost + cost[i + 1];
+			int bestLen = 1;
+			for (int l = matchLen[i]; l > 1; l--) {
+				int c = backrefCost + cost[i + l];
+				if (c < best) {
+					best = c;
+					bestLen = l;
+				}
+			}
+			cost[i] = best;
+			matchLen[i] = bestLen;
+		}
+
+		int scanPos = 0;
+		while (scanPos <= lastPos) {
+			int len = matchLen[scanPos];
+			if (len > 1) {
+				writeBackref(windowSize + scanPos - optMatchPos[scanPos], len);
+			} else {
+				writeLiteral(window[windowSize + scanPos]);
+			}
+			scanPos += len;
+		}
+		return scanPos;
+	}
+
+	/**
+	 * Find the longest match for the bytes at <code>end</code> by walking
+	 * the hash chain.  Ties go to the nearest match.  The search stops
+	 * early once the level's chain limit or nice length is reached.
+	 *
+	 * @param end the window index of the bytes to match
+	 * @param maxMatchLen the longest match we can use
+	 * @return the match length.  The match index is left in <code>matchPos</code>.
+	 */
+	private int findMatch(int end, int maxMatchLen) {
+		int offset = windowOffset;
+		int endPos = end + offset;
+		while (indexPos < endPos) {
+			insert(indexPos++);
+		}
+		if (maxMatchLen < 2) {
+			return 0;
+		}
+
+		int bestMatchLen = 0;
+		int goodEnough = Math.min(maxMatchLen, level.niceLength);
+		int chain = level.maxChain;
+		int start = endPos - windowSize;
+		int mask = prev.length - 1;
+		int p = head[hash(end)];
+		while (p >= endPos) {
+			// indexed ahead by an optimal parse
+			p = prev[p & mask];
+		}
+		for (; p >= start && chain-- > 0; p = prev[p & mask]) {
+			int i = p - offset;
+			if(window[i + bestMatchLen] == window[end + bestMatchLen]
+					&& window[i] == window[end]) {
+
+				int l = 1;
+				for(; l < maxMatchLen; l++) {
+					if (window[i + l] != window[end + l]) {
+						break;
+					}
+				}
+				if(l > bestMatchLen) {
+					bestMatchLen = l;
+					matchPos = i;
+					if(bestMatchLen >= goodEnough) {
+						break;
+					}
+				}
+			}
+		}
+		if (stats != null) {
+			stats.probes += level.maxChain - Math.max(chain, 0);
+		}
+		return bestMatchLen;
+	}
+
+	private void insert(int pos) {
+		int h = hash(pos - windowOffset);
+		prev[pos & (prev.length - 1)] = head[h];
+		head[h] = pos;
+	}
+
+	private int hash(int i) {
+		int key = ((window[i] & 0xff) << 8) | (window[i + 1] & 0xff);
+		return (key * 0x9E3779B1) >>> hashShift;
+	}
+
+	/**
+	 * Forget everything indexed and start indexing again from the
+	 * start of the window.  Rather than clearing the index, positions
+	 * move on past everything in it so the old entries all fall out of
+	 * the window.
+	 */
+	private void resetIndex() {
+		windowOffset += window.length;
+		if (windowOffset > MAX_WINDOW_OFFSET) {
+			rebaseIndex();
+		}
+		indexPos = windowOffset;
+	}
+
+	/**
+	 * Pull absolute positions back down before they overflow.  Anything
+	 * that falls off the bottom is out of the window anyway.  Moving by a
+	 * multiple of the <code>prev</code> size keeps its slots put.
+	 */
+	private void rebaseIndex() {
+		int delta = windowOffset & -prev.length;
+		for (int i = 0; i < head.length; i++) {
+			head[i] = head[i] >= delta ? head[i] - delta : -1;
+		}
+		for (int i = 0; i < prev.length; i++) {
+			prev[i] = prev[i] >= delta ? prev[i] - delta : -1;
+		}
+		windowOffset -= delta;
+		indexPos -= delta;
+	}
+
+	private void writeLiteral(byte c) {
+		if (stats != null) {
+			stats.literals++;
+		}
+		writeBits(9, 0x100 | (c & 0xff));
+	}
+
+	private void writeBackref(int matchStartIndex, int matchLength) {
+		if (stats != null) {
+			stats.backref(matchStartIndex, matchLength);
+		}
+		int bits = 1 + windowBits + lookaheadBits;
+		if (bits <= 32) {
+			writeBits(bits, ((matchStartIndex - 1) << lookaheadBits) | (matchLength - 1));
+		} else {
+			writeBits(1 + windowBits, matchStartIndex - 1);
+			writeBits(lookaheadBits, matchLength - 1);
+		}
+	}
+
+	/**
+	 * Append up to 32 bits to the bit buffer.  Whole words are moved to
+	 * the output buffer as soon as they're ready.
+	 */
+	private void writeBits(int numBits, int value) {
+		bitBuffer = (bitBuffer << numBits) | (value & 0xffffffffL);
+		bitCount += numBits;
+		if (bitCount >= 32) {
+			bitCount -= 32;
+			int word = (int) (bitBuffer >>> bitCount);
+			byte[] b = outputBuffer;
+			int p = outputPos;
+			b[p] = (byte) (word >>> 24);
+			b[p + 1] = (byte) (word >>> 16);
+			b[p + 2] = (byte) (word >>> 8);
+			b[p + 3] = (byte) word;
+			outputPos = p + 4;
+		}
+	}
+
+	/**
+	 * Move all pending bits to the output buffer, padding the last
+	 * byte with zeros.
+	 */
+	private void flushBits() {
+		while (bitCount > 0) {
+			bitCount -= 8;
+			outputBuffer[outputPos++] = (byte) (bitCount >= 0
+					? bitBuffer >>> bitCount
+					: bitBuffer << -bitCount);
+		}
+		bitCount = 0;
+	}
+
+}
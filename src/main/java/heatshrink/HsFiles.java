@@ -0,0 +1,118 @@
+package heatshrink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File to file encoding and decoding.  The input is memory mapped and
+ * handed straight to an {@link HsEncoder} or {@link HsDecoder}, and the
+ * output is written to a {@link FileChannel}, so nothing goes through a
+ * stream.
+ */
+public final class HsFiles {
+
+	/**
+	 * Most of the input to map at once
+	 */
+	private static final long MAP_SIZE = 1 << 30;
+
+	/**
+	 * Size of the buffer output is collected in between channel writes
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Encode a file using the default compression level
+	 *
+	 * @param in the file to encode
+	 * @param out the file to write.  Replaced if it exists.
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the number of bytes written
+	 * @throws IOException if something breaks
+	 */
+	public static long encode(Path in, Path out, int windowSize, int lookaheadSize) throws IOException {
+		return encode(in, out, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Encode a file
+	 *
+	 * @param in the file to encode
+	 * @param out the file to write.  Replaced if it exists.
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @return the number of bytes written
+	 * @throws IOException if something breaks
+	 */
+	public static long encode(Path in, Path out, int windowSize, int lookaheadSize, int level) throws IOException {
+		HsEncoder encoder = new HsEncoder(windowSize, lookaheadSize, level);
+		try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+			 FileChannel dst = openOutput(out)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			long written = 0;
+			long size = src.size();
+			for (long pos = 0; pos < size; pos += MAP_SIZE) {
+				MappedByteBuffer mapped = src.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_SIZE, size - pos));
+				while (encoder.encode(mapped, buf) == HsResult.OVERFLOW) {
+					written += write(dst, buf);
+				}
+			}
+			while (encoder.finish(buf) == HsResult.OVERFLOW) {
+				written += write(dst, buf);
+			}
+			return written + write(dst, buf);
+		}
+	}
+
+	/**
+	 * Decode a file
+	 *
+	 * @param in the file to decode
+	 * @param out the file to write.  Replaced if it exists.
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the number of bytes written
+	 * @throws IOException if something breaks
+	 */
+	public static long decode(Path in, Path out, int windowSize, int lookaheadSize) throws IOException {
+		HsDecoder decoder = new HsDecoder(windowSize, lookaheadSize);
+		try (FileChannel src = FileChannel.open(in, StandardOpenOption.READ);
+			 FileChannel dst = openOutput(out)) {
+			// heap so the decoder writes straight into it
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			long written = 0;
+			long size = src.size();
+			for (long pos = 0; pos < size; pos += MAP_SIZE) {
+				MappedByteBuffer mapped = src.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_SIZE, size - pos));
+				while (decoder.decode(mapped, buf) == HsResult.OVERFLOW) {
+					written += write(dst, buf);
+				}
+			}
+			return written + write(dst, buf);
+		}
+	}
+
+	private static FileChannel openOutput(Path out) throws IOException {
+		return FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+	}
+
+	private static int write(FileChannel dst, ByteBuffer buf) throws IOException {
+		buf.flip();
+		int n = buf.remaining();
+		while (buf.hasRemaining()) {
+			dst.write(buf);
+		}
+		buf.clear();
+		return n;
+	}
+
+	private HsFiles() {}
+}
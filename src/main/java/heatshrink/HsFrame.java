@@ -0,0 +1,258 @@
+package heatshrink;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The framed container format.  Input is cut into blocks that are each
+ * encoded on their own so they can be worked on in parallel.
+ *
+ * <pre>
+ * header: magic "HSFR" (4), version (1), window bits (1),
+ *         lookahead bits (1), flags (1), block size (4)
+ * block:  raw length (4), encoded length (4), encoded bytes
+ * end:    raw length of 0 (4)
+ * index:  block count (4), raw offset (8) and frame offset (8) of
+ *         each block, total raw length (8)
+ * footer: index offset (8), magic "HSFI" (4)
+ * </pre>
+ *
+ * Numbers are big endian.  The index and footer are only there when the
+ * {@link #FLAG_INDEX} flag is set.  With {@link #FLAG_STORED} set, a
+ * block whose encoded length has {@link #STORED_BLOCK} set holds its raw
+ * bytes as they are, for data that doesn't compress.
+ *
+ * @see ParallelHsOutputStream
+ * @see ParallelHsInputStream
+ * @see SeekableHsChannel
+ */
+final class HsFrame {
+
+	static final int MAGIC = 0x48534652;
+	static final int INDEX_MAGIC = 0x48534649;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 12;
+	static final int BLOCK_HEADER_SIZE = 8;
+	static final int FOOTER_SIZE = 12;
+	static final int FLAG_INDEX = 1;
+	static final int FLAG_STORED = 2;
+	static final int STORED_BLOCK = 0x80000000;
+	static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	/**
+	 * Readers buffer whole blocks, several at a time, so a header can't
+	 * ask for more than this
+	 */
+	static final int MAX_BLOCK_SIZE = 1 << 24;
+
+	/**
+	 * How much of a block is encoded to see if the rest is worth it, and
+	 * the least that has to save
+	 */
+	static final int PROBE_SIZE = 8192;
+	static final int PROBE_MIN_SAVING = PROBE_SIZE / 32;
+
+	final int windowSize;
+	final int lookaheadSize;
+	final int blockSize;
+	final int flags;
+
+	HsFrame(int windowSize, int lookaheadSize, int blockSize, int flags) {
+		this.windowSize = windowSize;
+		this.lookaheadSize = lookaheadSize;
+		this.blockSize = blockSize;
+		this.flags = flags;
+	}
+
+	void writeHeader(OutputStream out) throws IOException {
+		writeInt(out, MAGIC);
+		out.write(VERSION);
+		out.write(windowSize);
+		out.write(lookaheadSize);
+		out.write(flags);
+		writeInt(out, blockSize);
+	}
+
+	static HsFrame readHeader(InputStream in) throws IOException {
+		if (readInt(in) != MAGIC) {
+			throw new IOException("Not a heatshrink frame");
+		}
+		int version = readByte(in);
+		if (version != VERSION) {
+			throw new IOException("Unsupported frame version " + version);
+		}
+		int windowSize = readByte(in);
+		int lookaheadSize = readByte(in);
+		int flags = readByte(in);
+		int blockSize = readInt(in);
+		if (!HsEncoder.isValidSize(windowSize, lookaheadSize) || (flags & ~(FLAG_INDEX | FLAG_STORED)) != 0
+				|| blockSize < 1 || blockSize > MAX_BLOCK_SIZE) {
+			throw new IOException("Corrupt frame header");
+		}
+		return new HsFrame(windowSize, lookaheadSize, blockSize, flags);
+	}
+
+	/**
+	 * @return the most bytes <code>rawLength</code> bytes can encode to.
+	 *         No token costs more than 9 bits per byte.
+	 */
+	static int maxEncodedLength(int rawLength) {
+		return rawLength + (rawLength >> 3) + 1;
+	}
+
+	/**
+	 * Encode a whole block, prefixed with its block header
+	 */
+	static byte[] encodeBlock(HsEncoder encoder, byte[] b, int off, int len) {
+		byte[] encoded = new byte[8 + maxEncodedLength(len)];
+		int n = 8 + encode(encoder, b, off, len, encoded, 8);
+		putInt(encoded, 0, len);
+		putInt(encoded, 4, n - 8);
+		return n == encoded.length ? encoded : Arrays.copyOf(encoded, n);
+	}
+
+	/**
+	 * Like {@link #encodeBlock(HsEncoder, byte[], int, int)} but blocks
+	 * that don't compress are stored instead, for frames with
+	 * {@link #FLAG_STORED}.  The start of a big block is encoded first
+	 * and if that barely shrinks the rest isn't tried, so incompressible
+	 * data costs little more than a copy.
+	 */
+	static byte[] encodeOrStoreBlock(HsEncoder encoder, byte[] b, int off, int len) {
+		if (len > PROBE_SIZE) {
+			byte[] probe = new byte[maxEncodedLength(PROBE_SIZE)];
+			if (encode(encoder, b, off, PROBE_SIZE, probe, 0) > PROBE_SIZE - PROBE_MIN_SAVING) {
+				return storeBlock(b, off, len);
+			}
+		}
+		byte[] encoded = encodeBlock(encoder, b, off, len);
+		return encoded.length - BLOCK_HEADER_SIZE < len ? encoded : storeBlock(b, off, len);
+	}
+
+	private static byte[] storeBlock(byte[] b, int off, int len) {
+		byte[] stored = new byte[BLOCK_HEADER_SIZE + len];
+		putInt(stored, 0, len);
+		putInt(stored, 4, STORED_BLOCK | len);
+		System.arraycopy(b, off, stored, BLOCK_HEADER_SIZE, len);
+		return stored;
+	}
+
+	/**
+	 * Encode <code>len</code> bytes into <code>dst</code>, which must
+	 * have room for {@link #maxEncodedLength(int)}
+	 *
+	 * @return the number of encoded bytes
+	 */
+	private static int encode(HsEncoder encoder, byte[] b, int off, int len, byte[] dst, int dstOff) {
+		encoder.reset();
+		encoder.setInput(b, off, len);
+		encoder.finish();
+		int n = dstOff;
+		while (!encoder.finished()) {
+			n += encoder.encode(dst, n, dst.length - n);
+		}
+		return n - dstOff;
+	}
+
+	/**
+	 * @param encodedLength the encoded length from a block header
+	 * @return true if the block is stored rather than encoded
+	 */
+	boolean isStored(int encodedLength) {
+		return (flags & FLAG_STORED) != 0 && (encodedLength & STORED_BLOCK) != 0;
+	}
+
+	/**
+	 * @return true if <code>encodedLength</code> is possible for a block of
+	 *         <code>rawLength</code> bytes
+	 */
+	boolean isValidBlock(int rawLength, int encodedLength) {
+		return isStored(encodedLength) ? (encodedLength & ~STORED_BLOCK) == rawLength
+				: encodedLength >= 0 && encodedLength <= maxEncodedLength(rawLength);
+	}
+
+	/**
+	 * Decode a whole block into <code>raw</code>
+	 *
+	 * @throws IOException if it decodes to fewer than <code>rawLength</code> bytes
+	 */
+	static void decodeBlock(HsDecoder decoder, byte[] encoded, int encodedLength, byte[] raw, int rawLength)
+			throws IOException {
+		decoder.reset();
+		decoder.setInput(encoded, 0, encodedLength);
+		decoder.finish();
+		int n = 0;
+		while (n < rawLength && !decoder.finished()) {
+			n += decoder.decode(raw, n, rawLength - n);
+		}
+		if (n < rawLength) {
+			throw new IOException("Corrupt block");
+		}
+	}
+
+	/**
+	 * Write the index and footer.  <code>offsets</code> holds the raw and
+	 * frame offset of each block, one after the other.
+	 */
+	static void writeIndex(OutputStream out, long[] offsets, int blockCount, long rawLength, long indexOffset)
+			throws IOException {
+		writeInt(out, blockCount);
+		for (int i = 0; i < blockCount * 2; i++) {
+			writeLong(out, offsets[i]);
+		}
+		writeLong(out, rawLength);
+		writeLong(out, indexOffset);
+		writeInt(out, INDEX_MAGIC);
+	}
+
+	static void writeLong(OutputStream out, long v) throws IOException {
+		writeInt(out, (int) (v >>> 32));
+		writeInt(out, (int) v);
+	}
+
+	static void writeInt(OutputStream out, int v) throws IOException {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	static int readInt(InputStream in) throws IOException {
+		return (readByte(in) << 24) | (readByte(in) << 16) | (readByte(in) << 8) | readByte(in);
+	}
+
+	static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	static void readFully(InputStream in, byte[] b) throws IOException {
+		for (int off = 0; off < b.length; ) {
+			int n = in.read(b, off, b.length - off);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			off += n;
+		}
+	}
+
+	static void putInt(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+
+	static int getInt(byte[] b, int off) {
+		return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+	}
+
+	static long getLong(byte[] b, int off) {
+		return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xffffffffL);
+	}
+}
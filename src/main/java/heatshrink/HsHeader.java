@@ -0,0 +1,71 @@
+package heatshrink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Optional header in front of a plain heatshrink stream so it can be
+ * decoded without being told the sizes.
+ *
+ * <pre>
+ * magic "HSST" (4), version (1), window bits (1), lookahead bits (1),
+ * flags (1), raw length (8) if {@link #FLAG_LENGTH} is set
+ * </pre>
+ *
+ * Numbers are big endian.
+ *
+ * @see HsOutputStream#withHeader(OutputStream, int, int, int, long)
+ * @see HsInputStream#open(InputStream)
+ */
+final class HsHeader {
+
+	static final int MAGIC = 0x48535354;
+	static final int VERSION = 1;
+	static final int FLAG_LENGTH = 1;
+
+	final int windowSize;
+	final int lookaheadSize;
+	final long length;
+
+	/**
+	 * @param length the raw length or -1 if unknown
+	 */
+	HsHeader(int windowSize, int lookaheadSize, long length) {
+		this.windowSize = windowSize;
+		this.lookaheadSize = lookaheadSize;
+		this.length = length;
+	}
+
+	void write(OutputStream out) throws IOException {
+		HsFrame.writeInt(out, MAGIC);
+		out.write(VERSION);
+		out.write(windowSize);
+		out.write(lookaheadSize);
+		out.write(length >= 0 ? FLAG_LENGTH : 0);
+		if (length >= 0) {
+			HsFrame.writeLong(out, length);
+		}
+	}
+
+	/**
+	 * Read the rest of a header whose magic has already been read
+	 */
+	static HsHeader readAfterMagic(InputStream in) throws IOException {
+		int version = HsFrame.readByte(in);
+		if (version != VERSION) {
+			throw new IOException("Unsupported stream version " + version);
+		}
+		int windowSize = HsFrame.readByte(in);
+		int lookaheadSize = HsFrame.readByte(in);
+		int flags = HsFrame.readByte(in);
+		long length = -1;
+		if ((flags & FLAG_LENGTH) != 0) {
+			length = (long) HsFrame.readInt(in) << 32 | HsFrame.readInt(in) & 0xffffffffL;
+		}
+		if (!HsEncoder.isValidSize(windowSize, lookaheadSize) || (flags & ~FLAG_LENGTH) != 0 || length < -1) {
+			throw new IOException("Corrupt stream header");
+		}
+		return new HsHeader(windowSize, lookaheadSize, length);
+	}
+}
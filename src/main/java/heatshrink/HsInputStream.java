@@ -3,7 +3,7 @@ package heatshrink;
 import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.PushbackInputStream;
 
 /**
  * InputStream used to decode heatshrink'd data.
@@ -13,63 +13,23 @@ import java.util.Arrays;
  */
 public class HsInputStream extends FilterInputStream {
 
-	/**
-	 * State machine states.  Don't really need this but it's nice
-	 * to match the c code.
-	 */
-	enum State {
-		TAG_BIT,                /* tag bit */
-		YIELD_LITERAL,          /* ready to yield literal byte */
-		BACKREF_BOUNDS,         /* ready to yield backref bounds */
-		YIELD_BACKREF,          /* ready to yield back-reference */
-		BUFFER_EMPTY,           /* Not enough data to continue */
-	}
-
 	/**
 	 * buffer of compressed input bytes
 	 */
 	private final byte[] inputBuffer;
-	/**
-	 * window of data used for backref lookup
-	 */
-	private final byte[] window;
-	/**
-	 * number of bits in the window
-	 */
-	private final int windowSize;
-	/**
-	 * number of bits to lookahead
-	 */
-	private final int lookaheadSize;
-
-	/**
-	 * State machine state
-	 */
-	private State state;
-
-	/**
-	 * Input buffer bounds
-	 */
-	private int inputBufferPos;
 	private int inputBufferLen;
 	private boolean inputExhausted;
 
 	/**
-	 * Current byte bit reader bounds
+	 * The decoder doing the actual work.  It reads straight out of
+	 * <code>inputBuffer</code>.
 	 */
-	private int currentBytePos;
-	private int currentByte;
+	private final HsDecoder decoder;
 
 	/**
-	 * Current backref position
+	 * Raw length from the stream header, or -1
 	 */
-	private int windowPos;
-
-	/**
-	 * backref read index and count
-	 */
-	private int outputCount;
-	private int outputIndex;
+	private long length = -1;
 
 	/**
 	 * read() tmps
@@ -97,13 +57,66 @@ public class HsInputStream extends FilterInputStream {
 
 	public HsInputStream(java.io.InputStream in, int bufferSize, int windowSize, int lookaheadSize) {
 		super(in);
+		this.decoder = new HsDecoder(windowSize, lookaheadSize);
 		this.inputBuffer = new byte[bestInputBufferSize(bufferSize, windowSize)];
-		this.window = new byte[1 << windowSize];
-		this.windowSize = windowSize;
-		this.lookaheadSize = lookaheadSize;
 		clear();
 	}
 
+	/**
+	 * Opens a stream written with a header by
+	 * {@link HsOutputStream#withHeader(java.io.OutputStream, int, int)}.
+	 * The sizes come from the header.
+	 *
+	 * @param in the underlying input stream
+	 * @return the stream
+	 * @throws IOException if there's no header or it can't be read
+	 */
+	public static HsInputStream open(java.io.InputStream in) throws IOException {
+		if (HsFrame.readInt(in) != HsHeader.MAGIC) {
+			throw new IOException("No heatshrink stream header");
+		}
+		return open(in, HsHeader.readAfterMagic(in));
+	}
+
+	/**
+	 * Opens a stream that may or may not have a header.  If it doesn't,
+	 * the sizes given are used.  A plain stream that happens to start
+	 * with the header's magic number is mistaken for one with a header.
+	 *
+	 * @param in the underlying input stream
+	 * @param windowSize The window size (in bits) if there's no header
+	 * @param lookaheadSize The lookahead size (in bits) if there's no header
+	 * @return the stream
+	 * @throws IOException if the header can't be read
+	 */
+	public static HsInputStream open(java.io.InputStream in, int windowSize, int lookaheadSize) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, 4);
+		byte[] magic = new byte[4];
+		int n = 0;
+		for (int r; n < magic.length && (r = pin.read(magic, n, magic.length - n)) > 0; ) {
+			n += r;
+		}
+		if (n == magic.length && HsFrame.getInt(magic, 0) == HsHeader.MAGIC) {
+			return open(pin, HsHeader.readAfterMagic(pin));
+		}
+		pin.unread(magic, 0, n);
+		return new HsInputStream(pin, windowSize, lookaheadSize);
+	}
+
+	private static HsInputStream open(java.io.InputStream in, HsHeader header) {
+		HsInputStream hsi = new HsInputStream(in, header.windowSize, header.lookaheadSize);
+		hsi.length = header.length;
+		return hsi;
+	}
+
+	/**
+	 * @return the decoded length from the stream header or -1 if it
+	 *         wasn't given
+	 */
+	public long getLength() {
+		return length;
+	}
+
 	/**
 	 * Reads the next byte of data from this input stream. The value
 	 * byte is returned as an <code>int</code> in the range
@@ -175,88 +188,70 @@ public class HsInputStream extends FilterInputStream {
 	 */
 	public int read(byte b[], int off, int len) throws IOException {
 		rr.set(b, off, len);
-		while(rr.off < rr.end) {
-			State lastState = state;
-
-			switch (lastState) {
-				case TAG_BIT:
-					state = readTagBit();
-					break;
-				case YIELD_LITERAL:
-					state = readLiteral(rr);
-					break;
-				case BACKREF_BOUNDS:
-					state = readBackrefBounds();
-					break;
-				case YIELD_BACKREF:
-					state = readBackref(rr);
-					break;
-				case BUFFER_EMPTY:
-				default:
-					break;
-			}
-
-			if(state == State.BUFFER_EMPTY) {
-				state = lastState;
-				break;
-			}
+		decoder.decode(rr);
+		// with sync markers don't block for more once something's decoded
+		boolean sync = decoder.isSyncMarkers();
+		while (rr.off < rr.end && !(sync && rr.off > off) && fillInputBuffer()) {
+			decoder.decode(rr);
 		}
 
 		int numRead = rr.off - off;
 		return numRead > 0 ? numRead : inputExhausted ? -1 : 0;
 	}
 
-	private State readTagBit() throws IOException {
-		int bits = getBits(1);  // get tag bit
-		if(bits == -1) {
-			return State.BUFFER_EMPTY;
-		} else if (bits != 0) {
-			return State.YIELD_LITERAL;
+	/**
+	 * Reads until <code>len</code> bytes have been read or the stream
+	 * ends.  If nothing has been read yet the bytes are decoded straight
+	 * into <code>b</code>, which doubles as the window, so each decoded
+	 * byte is written once.
+	 *
+	 * @param      b     the buffer into which the data is read.
+	 * @param      off   the start offset in the destination array <code>b</code>
+	 * @param      len   the number of bytes to read.
+	 * @return     the number of bytes read, less than <code>len</code> only
+	 *             if the stream ended
+	 * @exception  IOException  if an I/O error occurs.
+	 */
+	public int readNBytes(byte[] b, int off, int len) throws IOException {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
 		}
-		outputCount = outputIndex = 0;
-		return State.BACKREF_BOUNDS;
-	}
-
-	private State readBackrefBounds() throws IOException {
-		int bits = getBits(windowSize);
-		if(bits == -1) return State.BUFFER_EMPTY;
-		outputIndex = bits + 1;
-
-		bits = getBits(lookaheadSize);
-		if(bits == -1) return State.BUFFER_EMPTY;
-		outputCount = bits + 1;
-
-		return State.YIELD_BACKREF;
-	}
-
-	private State readBackref(Result rr) {
-		int count = Math.min(rr.end - rr.off, outputCount);
-		if (count > 0) {
-			int mask = (1 << windowSize) - 1;
-			for (int i = 0; i < count; i++) {
-				byte c = window[(windowPos - outputIndex) & mask];
-				rr.b[rr.off++] = c;
-				window[windowPos++ & mask] = c;
+		if (decoder.atStart()) {
+			int n = decoder.decodeInto(b, off, len);
+			// a read of 0 isn't the end, only -1 is
+			while (n < len && !inputExhausted) {
+				fillInputBuffer();
+				n = decoder.decodeInto(b, off, len);
 			}
-			outputCount -= count;
-			if (outputCount == 0) {
-				return State.TAG_BIT;
+			return n;
+		}
+		int n = 0;
+		while (n < len) {
+			int r = read(b, off + n, len - n);
+			if (r < 0) {
+				break;
 			}
+			n += r;
 		}
-		return State.YIELD_BACKREF;
+		return n;
 	}
 
-	private State readLiteral(Result rr) throws IOException {
-		if (rr.off < rr.end) {
-			int bits = getBits(8);
-			if (bits == -1) return State.BUFFER_EMPTY;
-			int mask = (1 << windowSize)  - 1;
-			byte c = (byte) (bits & 0xff);
-			window[windowPos++ & mask] = c;
-			rr.b[rr.off++] = c;
-			return State.TAG_BIT;
+	/**
+	 * Fill <code>dst</code> with exactly <code>dst.length</code> decoded
+	 * bytes, for when the decoded size is known up front.
+	 *
+	 * @param dst where to put the decoded bytes
+	 * @throws EOFException if the stream ends first
+	 * @throws IOException if an I/O error occurs
+	 * @see #readNBytes(byte[], int, int)
+	 * @see #getLength()
+	 */
+	public void decodeFully(byte[] dst) throws IOException {
+		if (readNBytes(dst, 0, dst.length) < dst.length) {
+			throw new EOFException();
 		}
-		return State.YIELD_LITERAL;
 	}
 
 	/**
@@ -275,9 +270,9 @@ public class HsInputStream extends FilterInputStream {
 	 *                          or if some other I/O error occurs.
 	 */
 	public long skip(long n) throws IOException {
-		long r;
-		for(r = 0; r < n; r++) {
-			if(read(tmp) <= 0) break;
+		long r = decoder.skip(n);
+		while (r < n && fillInputBuffer()) {
+			r += decoder.skip(n - r);
 		}
 		return r;
 	}
@@ -291,9 +286,7 @@ public class HsInputStream extends FilterInputStream {
 	 * @see #skip(long)
 	 */
 	public long skipRaw(long n) throws IOException {
-		long toSkip = Math.min(n, inputBufferLen - inputBufferPos);
-		currentBytePos = 0;
-		inputBufferPos += toSkip;
+		long toSkip = decoder.skipInput(n);
 		n -= toSkip;
 		if(n > 0) {
 			toSkip += in.skip(n);
@@ -315,7 +308,7 @@ public class HsInputStream extends FilterInputStream {
 	 * @exception  IOException  if an I/O error occurs.
 	 */
 	public int available() throws IOException {
-		return inputBufferLen - inputBufferPos + in.available();
+		return decoder.getBufferedBytes() + in.available();
 	}
 
 	/**
@@ -393,72 +386,113 @@ public class HsInputStream extends FilterInputStream {
 		return false;
 	}
 
+	/**
+	 * Start or stop counting what the decoder does
+	 *
+	 * @param stats where to count or <code>null</code> to stop
+	 * @see HsDecoder#setStats(HsStats)
+	 */
+	public void setStats(HsStats stats) {
+		decoder.setStats(stats);
+	}
+
+	/**
+	 * @return the counters or <code>null</code> if not counting
+	 */
+	public HsStats getStats() {
+		return decoder.getStats();
+	}
+
+	/**
+	 * Start from a preset dictionary.  Call before reading anything.
+	 *
+	 * @param b the dictionary the stream was written with, or
+	 *          <code>null</code> for none
+	 * @see HsDecoder#setDictionary(byte[], int, int)
+	 */
+	public void setDictionary(byte[] b) {
+		decoder.setDictionary(b);
+		clear();
+	}
+
+	/**
+	 * Read streams written with {@link HsOutputStream#syncFlush()}.  Sync
+	 * markers are skipped, and a read returns as soon as it has decoded
+	 * something instead of blocking to fill the whole array, so whatever
+	 * was sync flushed can be read before more arrives.
+	 *
+	 * @param syncMarkers whether to look for sync markers
+	 * @see HsDecoder#setSyncMarkers(boolean)
+	 */
+	public void setSyncMarkers(boolean syncMarkers) {
+		decoder.setSyncMarkers(syncMarkers);
+	}
+
 	/**
 	 * Prepare this for reuse
 	 */
 	public void clear() {
-		state = State.TAG_BIT;
-		outputCount = 0;
-		outputIndex = 0;
-		inputBufferPos = 0;
 		inputBufferLen = 0;
 		inputExhausted = false;
-		currentBytePos = 0;
-		currentByte = 0;
-		windowPos = 0;
-		Arrays.fill(window, (byte)0);
-		Arrays.fill(inputBuffer, (byte)0);
+		decoder.reset();
+		decoder.bindInput(inputBuffer, 0, 0);
 	}
 
-	// exposed for testing
-	boolean ensureAvailable(int bitsRequired) throws IOException {
-		int bytesRemaining = inputBufferLen - inputBufferPos;
-		int bitsAvailable = bytesRemaining * 8;
-
-		bitsRequired -= currentBytePos;
-		if (bitsRequired > bitsAvailable) {
-			if (bytesRemaining > 0) {
-				// lame buffer shift won't happen often
-				System.arraycopy(inputBuffer, inputBufferPos, inputBuffer, 0, bytesRemaining);
-			}
-			inputBufferPos = 0;
-			inputBufferLen = bytesRemaining;
-			int numRead = in.read(inputBuffer, bytesRemaining, inputBuffer.length - bytesRemaining);
-			if(numRead > -1) {
-				inputBufferLen += numRead;
-			} else {
-				inputExhausted = true;
-			}
-			bitsAvailable = inputBufferLen * 8;
-		}
+	/**
+	 * Prepare this for reuse reading from another stream.  Nothing is
+	 * allocated.
+	 *
+	 * @param in the new underlying input stream
+	 * @see #clear()
+	 */
+	public void clear(java.io.InputStream in) {
+		this.in = in;
+		clear();
+	}
 
-		return bitsAvailable >= bitsRequired;
+	/**
+	 * Like {@link #clear(java.io.InputStream)}, but the dictionary, sync
+	 * markers and stats are dropped too
+	 */
+	void clearAll(java.io.InputStream in) {
+		decoder.resetAll();
+		clear(in);
 	}
 
-	// exposed for testing
-	int getBits(int numBits) throws IOException {
-		int ret = 0;
-		if (!ensureAvailable(numBits)) {
-			return -1;
+	/**
+	 * Read more compressed bytes from the underlying stream, keeping
+	 * whatever the decoder hasn't taken yet.
+	 *
+	 * @return true if anything was read
+	 */
+	private boolean fillInputBuffer() throws IOException {
+		int bytesRemaining = decoder.getRemaining();
+		if (bytesRemaining > 0) {
+			// lame buffer shift won't happen often
+			System.arraycopy(inputBuffer, inputBufferLen - bytesRemaining, inputBuffer, 0, bytesRemaining);
 		}
-		for (; numBits > 0; numBits--, currentBytePos--) {
-			if (currentBytePos == 0) {
-				currentByte = inputBuffer[inputBufferPos++];
-				currentBytePos = 8;
-			}
+		inputBufferLen = bytesRemaining;
+		int numRead = in.read(inputBuffer, bytesRemaining, inputBuffer.length - bytesRemaining);
+		if(numRead > -1) {
+			inputBufferLen += numRead;
+		} else {
+			inputExhausted = true;
+		}
+		decoder.bindInput(inputBuffer, 0, inputBufferLen);
+		return numRead > 0;
+	}
 
-			ret <<= 1;
-			if (currentBytePos == 8 && numBits >= 8) {
-				ret <<= 7; // look up!  we've already shifted one
-				ret |= currentByte & 0xff;
-				numBits -= 7; // the final bit it subtracted after the loop
-				currentBytePos = 1;
-			} else if ((currentByte & (1 << (currentBytePos - 1))) != 0) {
-				ret |= 0x01;
-			}
+	// exposed for testing
+	boolean ensureAvailable(int bitsRequired) throws IOException {
+		if (!decoder.hasBits(bitsRequired)) {
+			fillInputBuffer();
 		}
+		return decoder.hasBits(bitsRequired);
+	}
 
-		return ret;
+	// exposed for testing
+	int getBits(int numBits) throws IOException {
+		return ensureAvailable(numBits) ? decoder.getBits(numBits) : -1;
 	}
 
 	private static int bestInputBufferSize(int bufferSize, int windowSize) {
@@ -13,36 +13,9 @@ import java.io.OutputStream;
 public class HsOutputStream extends FilterOutputStream {
 
 	/**
-	 * Window size (in bytes)
+	 * The encoder doing the actual work
 	 */
-	private final int windowSize;
-	/**
-	 * Backref size (in bits)
-	 */
-	private final int lookaheadSize;
-	/**
-	 * Window size (in bits available)
-	 */
-	private final int windowBits;
-	/**
-	 * Backref size (in bits available)
-	 */
-	private final int lookaheadBits;
-
-	/**
-	 * Current byte I'm writting to
-	 */
-	private int currentByte;
-	/**
-	 * Current position I'm writing to
-	 */
-	private int currentBytePos = 0x80;
-
-	/**
-	 * window and position
-	 */
-	private final byte[] window;
-	private int windowPos;
+	private final HsEncoder encoder;
 
 	/**
 	 * write() tmps
@@ -76,12 +49,80 @@ public class HsOutputStream extends FilterOutputStream {
 	 *                      unused size bits to small patterns.
 	 */
 	public HsOutputStream(OutputStream out, int windowSize, int lookaheadSize) {
+		this(out, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates an output stream filter built on top of the specified
+	 * underlying output stream.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}.  Higher levels search harder
+	 *              for matches.  Every level writes the same format.
+	 * @see #HsOutputStream(OutputStream, int, int)
+	 */
+	public HsOutputStream(OutputStream out, int windowSize, int lookaheadSize, int level) {
+		this(out, windowSize, lookaheadSize, level, null);
+	}
+
+	/**
+	 * Creates an output stream filter built on top of the specified
+	 * underlying output stream.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @param parseMode How to choose between literals and backrefs or
+	 *                  <code>null</code> to use the level's default
+	 * @see #HsOutputStream(OutputStream, int, int, int)
+	 */
+	public HsOutputStream(OutputStream out, int windowSize, int lookaheadSize, int level, HsEncoder.ParseMode parseMode) {
 		super(out);
-		this.window = new byte[2 << windowSize];
-		this.windowBits = windowSize;
-		this.lookaheadBits = lookaheadSize;
-		this.windowSize = 1 << windowBits;
-		this.lookaheadSize = 1 << lookaheadBits;
+		this.encoder = new HsEncoder(windowSize, lookaheadSize, level, parseMode);
+	}
+
+	/**
+	 * Creates a stream that starts with a header holding the sizes, so
+	 * it can be read with {@link HsInputStream#open(java.io.InputStream)}.
+	 * The header is written straight away.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @return the stream
+	 * @throws IOException if the header can't be written
+	 */
+	public static HsOutputStream withHeader(OutputStream out, int windowSize, int lookaheadSize) throws IOException {
+		return withHeader(out, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION, -1);
+	}
+
+	/**
+	 * Creates a stream that starts with a header holding the sizes and,
+	 * if known, the number of bytes that will be written.  The header is
+	 * written straight away.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @param length the number of bytes that will be written or -1 if unknown
+	 * @return the stream
+	 * @throws IOException if the header can't be written
+	 */
+	public static HsOutputStream withHeader(OutputStream out, int windowSize, int lookaheadSize, int level,
+			long length) throws IOException {
+		if (length < -1) {
+			throw new IllegalArgumentException("Invalid length " + length);
+		}
+		HsOutputStream hso = new HsOutputStream(out, windowSize, lookaheadSize, level);
+		new HsHeader(windowSize, lookaheadSize, length).write(out);
+		return hso;
 	}
 
 	@Override
@@ -108,129 +149,95 @@ public class HsOutputStream extends FilterOutputStream {
 
 		wr.set(b, off, len);
 		while (wr.off < wr.end) {
-			if (fillOutputBuffer(wr)) {
-				flushOutputBuffer(false);
+			if (encoder.fill(wr)) {
+				encoder.encodeBlock(false);
+				encoder.writeOutput(out);
 			}
 		}
 	}
 
+	/**
+	 * Encode and write out everything written so far.  This ends the
+	 * stream: anything written after starts a new one from an empty
+	 * window, or the dictionary, that a fresh reader can decode on its
+	 * own.  See {@link #syncFlush()} to keep going.
+	 */
 	@Override
 	public void flush() throws IOException {
-		flushOutputBuffer(true);
+		encoder.encodeBlock(true);
+		encoder.writeOutput(out);
 		super.flush();
 	}
 
-	private boolean fillOutputBuffer(Result wr) {
-		int rem = windowSize - windowPos;
-		if(rem > 0) {
-			rem = Math.min(rem, wr.len);
-			System.arraycopy(wr.b, wr.off, window, windowPos + windowSize, rem);
-			wr.off += rem;
-			wr.len -= rem;
-			windowPos += rem;
-		}
-		return windowPos == windowSize;
-	}
-
-	private void flushOutputBuffer(boolean finish) throws IOException {
-		if(windowPos > 0) {
-			int scanPos = 0;
-			int breakEven = (1 + windowBits + lookaheadBits) / 8;
-			for(; scanPos <= windowPos - (finish ? 1 : lookaheadSize); scanPos++) {
-				scanPos = writeNext(scanPos, breakEven);
-			}
-
-			shiftWindow(finish, scanPos);
-		}
-		if(finish) {
-			if(currentBytePos != 0x80) {
-				flushCurrentByte();
-			}
-		}
-	}
-
-	private void shiftWindow(boolean finish, int scanPos) {
-		// Shift window down to prepare for more datas
-		if (!finish && scanPos <= windowPos) {
-			int rem = windowSize - scanPos;
-			System.arraycopy(window, windowPos - rem, window, 0, windowSize + rem);
-			windowPos = rem;
-		} else {
-			windowPos = 0;
-		}
+	/**
+	 * Encode and write out everything written so far without ending the
+	 * stream, so a reader can decode all of it straight away.  The window
+	 * is kept and compression carries on as if nothing happened, at the
+	 * cost of up to a couple of bytes for padding and a sync marker.
+	 * Read the result with {@link HsInputStream#setSyncMarkers(boolean)}
+	 * turned on.
+	 *
+	 * @throws IOException if the underlying stream can't be written
+	 */
+	public void syncFlush() throws IOException {
+		encoder.encodeBlock(false, true);
+		encoder.writeOutput(out);
+		out.flush();
 	}
 
-	private int writeNext(int scanPos, int breakEven) throws IOException {
-		int bestMatchLen = 0;
-		int bestMatchOff = 0;
-		int maxMatchLen = Math.min(lookaheadSize, windowPos - scanPos);
-		int end = windowSize + scanPos;
-		int start = end - windowSize;
-
-		for(int i = end - 1; i >= start; i--) {
-			if(window[i + bestMatchLen] == window[end + bestMatchLen]
-					&& window[i] == window[end]) {
-
-				int l = 1;
-				for(; l < maxMatchLen; l++) {
-					if (window[i + l] != window[end + l]) {
-						break;
-					}
-				}
-				if(l > bestMatchLen) {
-					bestMatchLen = l;
-					bestMatchOff = i;
-					if(bestMatchLen == maxMatchLen) {
-						break;
-					}
-				}
-			}
-		}
-		if(bestMatchLen > breakEven) {
-			writeBackref(end - bestMatchOff, bestMatchLen);
-			scanPos += bestMatchLen - 1;
-		} else {
-			writeLiteral(window[windowSize + scanPos]);
-		}
-		return scanPos;
+	/**
+	 * Start from a preset dictionary.  Call before writing anything.
+	 *
+	 * @param b the dictionary or <code>null</code> for none
+	 * @see HsEncoder#setDictionary(byte[], int, int)
+	 */
+	public void setDictionary(byte[] b) {
+		encoder.setDictionary(b);
 	}
 
-	private void writeLiteral(byte c) throws IOException {
-		writeBits(1, 1);
-		writeBits(8, c);
+	/**
+	 * Start or stop counting what the encoder does
+	 *
+	 * @param stats where to count or <code>null</code> to stop
+	 * @see HsEncoder#setStats(HsStats)
+	 */
+	public void setStats(HsStats stats) {
+		encoder.setStats(stats);
 	}
 
-	private void writeBackref(int matchStartIndex, int matchLength) throws IOException {
-		writeBits(1, 0);
-		writeBits(windowBits, matchStartIndex-1);
-		writeBits(lookaheadBits, matchLength-1);
+	/**
+	 * @return the counters or <code>null</code> if not counting
+	 */
+	public HsStats getStats() {
+		return encoder.getStats();
 	}
 
-	private void writeBits(int numBits, int value) throws IOException {
-		if(numBits == 8 && currentBytePos == 0x80) {
-			currentByte = value & 0xff;
-			flushCurrentByte();
-		} else {
-			for (int i = numBits - 1; i >= 0; i--) {
-				if ((value & (1 << i)) != 0) {
-					currentByte |= currentBytePos;
-				}
-				if ((currentBytePos >>= 1) == 0) {
-					flushCurrentByte();
-				}
-			}
-		}
+	/**
+	 * Prepare this for reuse.  Anything written since the last flush is
+	 * discarded.
+	 */
+	public void clear() {
+		encoder.reset();
 	}
 
-	private void flushCurrentByte() throws IOException {
-		out.write(currentByte);
-		currentBytePos = 0x80;
-		currentByte = 0;
+	/**
+	 * Prepare this for reuse writing to another stream.  Nothing is
+	 * allocated.
+	 *
+	 * @param out the new underlying output stream
+	 * @see #clear()
+	 */
+	public void clear(OutputStream out) {
+		this.out = out;
+		clear();
 	}
 
-	public void clear() {
-		currentBytePos = 0x80;
-		currentByte = 0;
-		windowPos = 0;
+	/**
+	 * Like {@link #clear(OutputStream)}, but the dictionary and stats are
+	 * dropped too
+	 */
+	void clearAll(OutputStream out) {
+		this.out = out;
+		encoder.resetAll();
 	}
 }
@@ -0,0 +1,81 @@
+package heatshrink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel that reads encoded bytes from another channel and decodes
+ * them.  Encoded bytes are read into a direct buffer, so channel reads
+ * need no extra copy, and the decoder reads them from there in place.
+ * A heap buffer passed to {@link #read(ByteBuffer)} is decoded into
+ * straight; a direct one goes through a small staging array first, as
+ * the window lives on heap.  A read returns as soon as it has decoded
+ * something.  The underlying channel may be non-blocking, in
+ * which case a read returns 0 when nothing more can be decoded yet.  Not
+ * thread safe.
+ *
+ * @see HsWritableByteChannel
+ */
+public class HsReadableByteChannel implements ReadableByteChannel {
+
+	/**
+	 * Size of the buffer encoded bytes are read into
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final HsDecoder decoder;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private boolean endOfInput;
+	private boolean open = true;
+
+	/**
+	 * Creates a channel.
+	 *
+	 * @param channel the underlying channel
+	 * @param windowSize The window size (in bits).  Must match the encoder.
+	 * @param lookaheadSize The lookahead size (in bits).  Must match the encoder.
+	 */
+	public HsReadableByteChannel(ReadableByteChannel channel, int windowSize, int lookaheadSize) {
+		this.channel = channel;
+		this.decoder = new HsDecoder(windowSize, lookaheadSize);
+		buffer.flip();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		int start = dst.position();
+		while (decoder.decode(buffer, dst) == HsResult.UNDERFLOW
+				&& dst.position() == start && !endOfInput) {
+			buffer.compact();
+			int n = channel.read(buffer);
+			buffer.flip();
+			if (n < 0) {
+				endOfInput = true;
+			} else if (n == 0) {
+				break;
+			}
+		}
+		int n = dst.position() - start;
+		return n == 0 && endOfInput && dst.hasRemaining() ? -1 : n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Closes the underlying channel
+	 */
+	@Override
+	public void close() throws IOException {
+		open = false;
+		channel.close();
+	}
+}
@@ -0,0 +1,16 @@
+package heatshrink;
+
+/**
+ * Why an {@link HsEncoder} or {@link HsDecoder} call returned.  Like
+ * {@link java.nio.charset.CoderResult} without the errors.
+ */
+public enum HsResult {
+	/**
+	 * All of the input was taken.  Call again with more input.
+	 */
+	UNDERFLOW,
+	/**
+	 * The output buffer is full.  Call again with more room.
+	 */
+	OVERFLOW,
+}
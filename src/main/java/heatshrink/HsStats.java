@@ -0,0 +1,144 @@
+package heatshrink;
+
+import java.util.Arrays;
+
+/**
+ * Counters kept by an encoder or decoder once given to
+ * {@link HsOutputStream#setStats(HsStats)},
+ * {@link HsInputStream#setStats(HsStats)} or the codec's own
+ * <code>setStats</code>.  Codecs without one don't count anything.
+ * <p>
+ * Histograms have a bucket per power of two: bucket <code>i</code>
+ * counts values from <code>2^i</code> up to <code>2^(i+1) - 1</code>.
+ * <p>
+ * Not thread safe.  Read the counters from the thread using the codec or
+ * once it's done, and give each codec its own instance.
+ *
+ * @see HsStatsEvent
+ */
+public class HsStats {
+
+	private static final int BUCKETS = 32;
+
+	long bytesIn;
+	long bytesOut;
+	long literals;
+	long backrefs;
+	long probes;
+	long nanos;
+	final long[] backrefLengths = new long[BUCKETS];
+	final long[] backrefOffsets = new long[BUCKETS];
+
+	/**
+	 * @return bytes taken in.  Raw bytes for an encoder, encoded bytes for
+	 *         a decoder.
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return bytes produced.  Encoded bytes for an encoder, raw bytes for
+	 *         a decoder.
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	/**
+	 * @return bytes out per byte in, or 0 before anything is counted.
+	 *         Below 1 means an encoder is compressing.
+	 */
+	public double getRatio() {
+		return bytesIn == 0 ? 0 : (double) bytesOut / bytesIn;
+	}
+
+	/**
+	 * @return the number of literal tokens
+	 */
+	public long getLiterals() {
+		return literals;
+	}
+
+	/**
+	 * @return the number of backref tokens
+	 */
+	public long getBackrefs() {
+		return backrefs;
+	}
+
+	/**
+	 * @return backref counts by length, a bucket per power of two
+	 */
+	public long[] getBackrefLengthHistogram() {
+		return backrefLengths.clone();
+	}
+
+	/**
+	 * @return backref counts by how far back they reach, a bucket per
+	 *         power of two
+	 */
+	public long[] getBackrefOffsetHistogram() {
+		return backrefOffsets.clone();
+	}
+
+	/**
+	 * @return match candidates looked at by the encoder.  Always 0 for a
+	 *         decoder.
+	 */
+	public long getProbes() {
+		return probes;
+	}
+
+	/**
+	 * @return encoder match candidates looked at per raw byte
+	 */
+	public double getProbesPerByte() {
+		return bytesIn == 0 ? 0 : (double) probes / bytesIn;
+	}
+
+	/**
+	 * @return nanoseconds spent encoding blocks or decoding
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Zero everything
+	 */
+	public void reset() {
+		bytesIn = 0;
+		bytesOut = 0;
+		literals = 0;
+		backrefs = 0;
+		probes = 0;
+		nanos = 0;
+		Arrays.fill(backrefLengths, 0);
+		Arrays.fill(backrefOffsets, 0);
+	}
+
+	void backref(int index, int count) {
+		backrefs++;
+		backrefLengths[bucket(count)]++;
+		backrefOffsets[bucket(index)]++;
+	}
+
+	private static int bucket(int value) {
+		return 31 - Integer.numberOfLeadingZeros(value);
+	}
+
+	@Override
+	public String toString() {
+		return "HsStats{" +
+				"bytesIn=" + bytesIn +
+				", bytesOut=" + bytesOut +
+				", literals=" + literals +
+				", backrefs=" + backrefs +
+				", probes=" + probes +
+				", nanos=" + nanos +
+				", backrefLengths=" + Arrays.toString(backrefLengths) +
+				", backrefOffsets=" + Arrays.toString(backrefOffsets) +
+				'}';
+	}
+}
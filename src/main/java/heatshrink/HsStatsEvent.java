@@ -0,0 +1,69 @@
+package heatshrink;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event carrying a snapshot of {@link HsStats}.  Only this class
+ * needs JFR, so nothing else breaks on a JVM without it.
+ * <pre>
+ * HsStatsEvent.commit("telemetry", hso.getStats());
+ * </pre>
+ */
+@Name("heatshrink.Stats")
+@Label("Heatshrink Stats")
+@Category("Heatshrink")
+@Description("Counters from a heatshrink encoder or decoder")
+public class HsStatsEvent extends Event {
+
+	@Label("Source")
+	@Description("What the counters are for")
+	String source;
+
+	@Label("Bytes In")
+	@DataAmount
+	long bytesIn;
+
+	@Label("Bytes Out")
+	@DataAmount
+	long bytesOut;
+
+	@Label("Literals")
+	long literals;
+
+	@Label("Backrefs")
+	long backrefs;
+
+	@Label("Probes")
+	@Description("Match candidates looked at by the encoder")
+	long probes;
+
+	@Label("Codec Time")
+	@Timespan
+	long nanos;
+
+	/**
+	 * Record a snapshot if the event is enabled
+	 *
+	 * @param source a name for where the counters came from
+	 * @param stats the counters
+	 */
+	public static void commit(String source, HsStats stats) {
+		HsStatsEvent event = new HsStatsEvent();
+		if (event.isEnabled()) {
+			event.source = source;
+			event.bytesIn = stats.bytesIn;
+			event.bytesOut = stats.bytesOut;
+			event.literals = stats.literals;
+			event.backrefs = stats.backrefs;
+			event.probes = stats.probes;
+			event.nanos = stats.nanos;
+			event.commit();
+		}
+	}
+}
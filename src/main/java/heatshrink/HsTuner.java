@@ -0,0 +1,251 @@
+package heatshrink;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Picks window and lookahead sizes for a kind of data by compressing a
+ * sample with each pair in a range.  Pairs are tried in parallel and
+ * each is timed for encoding and decoding.
+ * <pre>
+ * List&lt;HsTuner.Result&gt; results = new HsTuner().tune(sample);
+ * HsTuner.Result best = HsTuner.recommend(results);
+ * </pre>
+ */
+public class HsTuner {
+
+	/**
+	 * Results within this fraction of the best ratio count as just as good
+	 */
+	private static final double RATIO_TOLERANCE = 0.01;
+
+	private final int minWindowSize;
+	private final int maxWindowSize;
+	private final int minLookaheadSize;
+	private final int maxLookaheadSize;
+	private final int level;
+	private final int runs;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a tuner trying windows of 8 to 15 bits and lookaheads of 4
+	 * to 8 bits at the default level on the common fork join pool.
+	 */
+	public HsTuner() {
+		this(8, 15, 4, 8, HsEncoder.DEFAULT_COMPRESSION, 3, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a tuner.  Pairs where the lookahead isn't smaller than the
+	 * window are skipped.
+	 *
+	 * @param minWindowSize The smallest window size (in bits)
+	 * @param maxWindowSize The biggest window size (in bits)
+	 * @param minLookaheadSize The smallest lookahead size (in bits)
+	 * @param maxLookaheadSize The biggest lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @param runs How many times to time each pair.  The fastest run counts.
+	 * @param executor Where to try the pairs
+	 */
+	public HsTuner(int minWindowSize, int maxWindowSize, int minLookaheadSize, int maxLookaheadSize,
+			int level, int runs, ExecutorService executor) {
+		if (level < HsEncoder.BEST_SPEED || level > HsEncoder.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		if (minWindowSize < HsEncoder.MIN_WINDOW_SIZE || maxWindowSize > HsEncoder.MAX_WINDOW_SIZE
+				|| minLookaheadSize < HsEncoder.MIN_LOOKAHEAD_SIZE) {
+			throw new IllegalArgumentException("Invalid size range " + minWindowSize + ".." + maxWindowSize
+					+ "/" + minLookaheadSize + ".." + maxLookaheadSize);
+		}
+		if (runs < 1) {
+			throw new IllegalArgumentException("Invalid runs " + runs);
+		}
+		this.minWindowSize = minWindowSize;
+		this.maxWindowSize = maxWindowSize;
+		this.minLookaheadSize = minLookaheadSize;
+		this.maxLookaheadSize = maxLookaheadSize;
+		this.level = level;
+		this.runs = runs;
+		this.executor = executor;
+	}
+
+	/**
+	 * Try every pair on a sample
+	 *
+	 * @param sample representative data
+	 * @return a result per pair, by window size then lookahead size
+	 * @throws IOException if something breaks
+	 */
+	public List<Result> tune(byte[] sample) throws IOException {
+		List<Future<Result>> futures = new ArrayList<>();
+		for (int w = minWindowSize; w <= maxWindowSize; w++) {
+			for (int l = minLookaheadSize; l <= maxLookaheadSize && l < w; l++) {
+				int windowSize = w;
+				int lookaheadSize = l;
+				futures.add(executor.submit(() -> measure(sample, windowSize, lookaheadSize)));
+			}
+		}
+		List<Result> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<Result> f : futures) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof UncheckedIOException ? ((UncheckedIOException) cause).getCause()
+					: new IOException(cause);
+		} finally {
+			for (Future<Result> f : futures) {
+				f.cancel(true);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Pick a pair.  Of the results within 1% of the best ratio, the one
+	 * with the smallest window wins, since it needs the least memory on
+	 * both ends and encodes fastest.  Ties go to the faster decode.
+	 *
+	 * @param results from {@link #tune(byte[])}
+	 * @return the recommended pair or <code>null</code> if there are none
+	 */
+	public static Result recommend(List<Result> results) {
+		double best = Double.MAX_VALUE;
+		for (Result r : results) {
+			best = Math.min(best, r.getRatio());
+		}
+		double limit = best * (1 + RATIO_TOLERANCE);
+		return results.stream()
+				.filter(r -> r.getRatio() <= limit)
+				.min(Comparator.comparingInt(Result::getWindowSize)
+						.thenComparingLong(Result::getDecodeNanos))
+				.orElse(null);
+	}
+
+	private Result measure(byte[] sample, int windowSize, int lookaheadSize) {
+		try {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(sample.length + (sample.length >> 3) + 1);
+			HsOutputStream hso = new HsOutputStream(compressed, windowSize, lookaheadSize, level);
+			long encodeNanos = Long.MAX_VALUE;
+			for (int i = 0; i < runs; i++) {
+				compressed.reset();
+				hso.clear(compressed);
+				long start = System.nanoTime();
+				hso.write(sample);
+				hso.flush();
+				encodeNanos = Math.min(encodeNanos, System.nanoTime() - start);
+			}
+
+			byte[] encoded = compressed.toByteArray();
+			byte[] decoded = new byte[sample.length];
+			HsInputStream hsi = new HsInputStream(null, windowSize, lookaheadSize);
+			long decodeNanos = Long.MAX_VALUE;
+			for (int i = 0; i < runs; i++) {
+				hsi.clear(new ByteArrayInputStream(encoded));
+				long start = System.nanoTime();
+				for (int off = 0, n; off < decoded.length && (n = hsi.read(decoded, off, decoded.length - off)) > 0; ) {
+					off += n;
+				}
+				decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+			}
+			if (!Arrays.equals(sample, decoded)) {
+				throw new IllegalStateException("Round trip failed for " + windowSize + "/" + lookaheadSize);
+			}
+			return new Result(windowSize, lookaheadSize, sample.length, encoded.length, encodeNanos, decodeNanos);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * How one pair did
+	 */
+	public static final class Result {
+		private final int windowSize;
+		private final int lookaheadSize;
+		private final long sampleSize;
+		private final long compressedSize;
+		private final long encodeNanos;
+		private final long decodeNanos;
+
+		Result(int windowSize, int lookaheadSize, long sampleSize, long compressedSize,
+				long encodeNanos, long decodeNanos) {
+			this.windowSize = windowSize;
+			this.lookaheadSize = lookaheadSize;
+			this.sampleSize = sampleSize;
+			this.compressedSize = compressedSize;
+			this.encodeNanos = encodeNanos;
+			this.decodeNanos = decodeNanos;
+		}
+
+		public int getWindowSize() {
+			return windowSize;
+		}
+
+		public int getLookaheadSize() {
+			return lookaheadSize;
+		}
+
+		public long getSampleSize() {
+			return sampleSize;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * @return compressed size over sample size
+		 */
+		public double getRatio() {
+			return sampleSize == 0 ? 1 : (double) compressedSize / sampleSize;
+		}
+
+		public long getEncodeNanos() {
+			return encodeNanos;
+		}
+
+		public long getDecodeNanos() {
+			return decodeNanos;
+		}
+
+		/**
+		 * @return sample MB (10^6 bytes) encoded per second
+		 */
+		public double getEncodeMBps() {
+			return mbps(encodeNanos);
+		}
+
+		/**
+		 * @return sample MB (10^6 bytes) decoded per second
+		 */
+		public double getDecodeMBps() {
+			return mbps(decodeNanos);
+		}
+
+		private double mbps(long nanos) {
+			return nanos == 0 ? 0 : sampleSize * 1000.0 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("-w %2d -l %2d  ratio %.4f  encode %8.1f MB/s  decode %8.1f MB/s",
+					windowSize, lookaheadSize, getRatio(), getEncodeMBps(), getDecodeMBps());
+		}
+	}
+}
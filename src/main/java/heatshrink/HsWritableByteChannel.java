@@ -0,0 +1,116 @@
+package heatshrink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel that encodes what's written to it and writes the result to
+ * another channel.  Buffers are handed straight to an {@link HsEncoder},
+ * direct or not, and output is collected in a direct buffer so channel
+ * writes don't need another copy.  The underlying channel should be in
+ * blocking mode; for non-blocking I/O use {@link HsEncoder} directly.
+ * Not thread safe.
+ *
+ * @see HsReadableByteChannel
+ */
+public class HsWritableByteChannel implements WritableByteChannel {
+
+	/**
+	 * Size of the buffer output is collected in between channel writes
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final HsEncoder encoder;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private boolean open = true;
+
+	/**
+	 * Creates a channel using the default compression level.
+	 *
+	 * @param channel the underlying channel
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 */
+	public HsWritableByteChannel(WritableByteChannel channel, int windowSize, int lookaheadSize) {
+		this(channel, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a channel.
+	 *
+	 * @param channel the underlying channel
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 */
+	public HsWritableByteChannel(WritableByteChannel channel, int windowSize, int lookaheadSize, int level) {
+		this.channel = channel;
+		this.encoder = new HsEncoder(windowSize, lookaheadSize, level);
+	}
+
+	/**
+	 * Takes all of <code>src</code>.  Encoded bytes are written to the
+	 * underlying channel once a buffer's worth is ready.
+	 */
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		int n = src.remaining();
+		while (encoder.encode(src, buffer) == HsResult.OVERFLOW) {
+			writeBuffer();
+		}
+		return n;
+	}
+
+	/**
+	 * Encode and write out everything written so far.  Like
+	 * {@link HsOutputStream#flush()} this ends the stream and anything
+	 * written after starts a new one.
+	 *
+	 * @throws IOException if the underlying channel can't be written
+	 */
+	public void flush() throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		while (encoder.finish(buffer) == HsResult.OVERFLOW) {
+			writeBuffer();
+		}
+		writeBuffer();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	/**
+	 * Flushes and closes the underlying channel
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!open) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			open = false;
+			channel.close();
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -6,16 +6,37 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main implements AutoCloseable {
 
+	/**
+	 * Most of the input to tune on
+	 */
+	private static final int TUNE_SAMPLE_SIZE = 1 << 20;
+
 	private InputStream input;
 	private OutputStream output;
 
+	/**
+	 * Set when both ends are files, which are mapped instead of streamed
+	 */
+	private Path inputPath;
+	private Path outputPath;
+
+	private int windowSize = 9;
+	private int lookaheadBits = 8;
+	private int level = HsEncoder.DEFAULT_COMPRESSION;
+	private boolean encode;
+	private boolean tune;
+
 	private Main(String[] args) throws FileNotFoundException {
-		int windowSize = 9;
-		int lookaheadBits = 8;
-		boolean encode = false;
+		String inputName = null;
+		String outputName = null;
 
 		for (int i = 0; i < args.length; i++) {
 			String arg = args[i];
@@ -26,45 +47,73 @@ public class Main implements AutoCloseable {
 				case "-l":
 					lookaheadBits = Integer.parseInt(args[++i]);
 					break;
+				case "-1":
+				case "-2":
+				case "-3":
+				case "-4":
+				case "-5":
+				case "-6":
+				case "-7":
+				case "-8":
+				case "-9":
+					level = arg.charAt(1) - '0';
+					break;
 				case "-e":
 					encode = true;
 					break;
 				case "-d":
 					encode = false;
 					break;
+				case "--tune":
+					tune = true;
+					break;
 				case "-h":
 					throw new RuntimeException("Exit");
-				case "-":
-					if (input == null) {
-						input = System.in;
-					} else if (output == null) {
-						output = System.out;
-					}
-					break;
 				default:
-					if (input == null) {
-						input = new FileInputStream(arg);
-					} else if (output == null) {
-						output = new FileOutputStream(arg);
+					if (inputName == null) {
+						inputName = arg;
+					} else if (outputName == null) {
+						outputName = arg;
 					}
 					break;
 			}
 		}
 
-		if (input == null) {
-			input = System.in;
+		if (tune) {
+			input = isFile(inputName) ? new FileInputStream(inputName) : System.in;
+			return;
 		}
-		if (output == null) {
-			output = System.out;
+		if (isFile(inputName) && isFile(outputName)) {
+			inputPath = Paths.get(inputName);
+			outputPath = Paths.get(outputName);
+			return;
 		}
+		input = isFile(inputName) ? new FileInputStream(inputName) : System.in;
+		output = isFile(outputName) ? new FileOutputStream(outputName) : System.out;
 		if (encode) {
-			output = new HsOutputStream(output, windowSize, lookaheadBits);
+			output = new HsOutputStream(output, windowSize, lookaheadBits, level);
 		} else {
 			input = new HsInputStream(input, windowSize, lookaheadBits);
 		}
 	}
 
+	private static boolean isFile(String name) {
+		return name != null && !name.equals("-");
+	}
+
 	private void run() throws IOException {
+		if (tune) {
+			tune(System.out);
+			return;
+		}
+		if (inputPath != null) {
+			if (encode) {
+				HsFiles.encode(inputPath, outputPath, windowSize, lookaheadBits, level);
+			} else {
+				HsFiles.decode(inputPath, outputPath, windowSize, lookaheadBits);
+			}
+			return;
+		}
 		byte[] buf = new byte[10240];
 		int r;
 		while ((r = input.read(buf)) != -1) {
@@ -72,6 +121,20 @@ public class Main implements AutoCloseable {
 		}
 	}
 
+	private void tune(PrintStream out) throws IOException {
+		byte[] sample = new byte[TUNE_SAMPLE_SIZE];
+		int len = 0;
+		for (int r; len < sample.length && (r = input.read(sample, len, sample.length - len)) != -1; ) {
+			len += r;
+		}
+		List<HsTuner.Result> results = new HsTuner().tune(Arrays.copyOf(sample, len));
+		for (HsTuner.Result result : results) {
+			out.println(result);
+		}
+		HsTuner.Result best = HsTuner.recommend(results);
+		out.println("Recommended: -w " + best.getWindowSize() + " -l " + best.getLookaheadSize());
+	}
+
 	@Override
 	public void close() {
 		if (input != null) {
@@ -90,7 +153,7 @@ public class Main implements AutoCloseable {
 		try (Main m = new Main(args)) {
 			m.run();
 		} catch (Exception e) {
-			System.err.println("Usage: java -jar <jarname> [-h] [-e|-d] [-v] [-w SIZE] [-l BITS] [IN_FILE] [OUT_FILE]");
+			System.err.println("Usage: java -jar <jarname> [-h] [-e|-d|--tune] [-1..-9] [-v] [-w SIZE] [-l BITS] [IN_FILE] [OUT_FILE]");
 			throw e;
 		}
 	}
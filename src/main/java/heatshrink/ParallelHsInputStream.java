@@ -0,0 +1,208 @@
+package heatshrink;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * InputStream that reads the framed format written by
+ * {@link ParallelHsOutputStream}, decoding blocks in parallel.  The
+ * window and lookahead sizes come from the frame header.
+ *
+ * @see ParallelHsOutputStream
+ */
+public class ParallelHsInputStream extends FilterInputStream {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final ExecutorService executor;
+
+	/**
+	 * Blocks being decoded, oldest first, and how many to read ahead
+	 */
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final int maxPending;
+
+	/**
+	 * Decoders not in use by a task
+	 */
+	private final Queue<HsDecoder> decoders = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Read from the underlying stream on the first read
+	 */
+	private HsFrame frame;
+	private boolean endOfFrame;
+
+	/**
+	 * The block being read from
+	 */
+	private byte[] block = EMPTY;
+	private int blockPos;
+
+	/**
+	 * read() tmps
+	 */
+	private final byte[] tmp = new byte[1];
+
+	/**
+	 * Creates a stream decoding on the common fork join pool.
+	 *
+	 * @param in the underlying input stream
+	 */
+	public ParallelHsInputStream(InputStream in) {
+		this(in, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a stream.
+	 *
+	 * @param in the underlying input stream
+	 * @param executor Where to decode the blocks
+	 */
+	public ParallelHsInputStream(InputStream in, ExecutorService executor) {
+		super(in);
+		this.executor = executor;
+		this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public int read() throws IOException {
+		return read(tmp, 0, 1) <= 0 ? -1 : tmp[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b) throws IOException {
+		return read(b, 0, b.length);
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (len == 0) {
+			return 0;
+		}
+		if (blockPos == block.length && !nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, block.length - blockPos);
+		System.arraycopy(block, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+
+	/**
+	 * Skips decoded bytes.  Blocks are still decoded, but skipping
+	 * within one is free.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && (blockPos < block.length || nextBlock())) {
+			int s = (int) Math.min(n - skipped, block.length - blockPos);
+			blockPos += s;
+			skipped += s;
+		}
+		return skipped;
+	}
+
+	/**
+	 * @return the number of decoded bytes left in the current block
+	 */
+	@Override
+	public int available() {
+		return block.length - blockPos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<byte[]> f : pending) {
+			f.cancel(true);
+		}
+		pending.clear();
+		in.close();
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private boolean nextBlock() throws IOException {
+		if (frame == null) {
+			frame = HsFrame.readHeader(in);
+		}
+		while (!endOfFrame && pending.size() < maxPending) {
+			readBlock();
+		}
+		if (pending.isEmpty()) {
+			return false;
+		}
+		try {
+			block = pending.poll().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		}
+		blockPos = 0;
+		return true;
+	}
+
+	private void readBlock() throws IOException {
+		int rawLength = HsFrame.readInt(in);
+		if (rawLength == 0) {
+			endOfFrame = true;
+			return;
+		}
+		int encodedLength = HsFrame.readInt(in);
+		if (rawLength < 0 || rawLength > frame.blockSize || !frame.isValidBlock(rawLength, encodedLength)) {
+			throw new IOException("Corrupt block header");
+		}
+		if (frame.isStored(encodedLength)) {
+			byte[] raw = new byte[rawLength];
+			HsFrame.readFully(in, raw);
+			pending.add(CompletableFuture.completedFuture(raw));
+			return;
+		}
+		byte[] encoded = new byte[encodedLength];
+		HsFrame.readFully(in, encoded);
+		pending.add(executor.submit(() -> {
+			HsDecoder decoder = decoders.poll();
+			if (decoder == null) {
+				decoder = new HsDecoder(frame.windowSize, frame.lookaheadSize);
+			}
+			try {
+				byte[] raw = new byte[rawLength];
+				HsFrame.decodeBlock(decoder, encoded, encodedLength, raw, rawLength);
+				return raw;
+			} finally {
+				decoders.add(decoder);
+			}
+		}));
+	}
+}
@@ -0,0 +1,258 @@
+package heatshrink;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * OutputStream that writes the framed format, encoding blocks in
+ * parallel.  Blocks are written in order so the output doesn't depend on
+ * how the work was scheduled.  Each block is encoded on its own, which
+ * costs a little ratio at the start of every block.  The frame ends with
+ * an index of the blocks so it can be read with {@link SeekableHsChannel}.
+ *
+ * @see ParallelHsInputStream
+ */
+public class ParallelHsOutputStream extends FilterOutputStream {
+
+	private final HsFrame frame;
+	private final int level;
+	private final ExecutorService executor;
+
+	/**
+	 * Blocks being encoded, oldest first, and how many of them to allow
+	 * before waiting on the oldest
+	 */
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final int maxPending;
+
+	/**
+	 * Encoders not in use by a task
+	 */
+	private final Queue<HsEncoder> encoders = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The block being filled
+	 */
+	private byte[] block;
+	private int blockPos;
+
+	/**
+	 * Raw and frame offset of each block written, for the index
+	 */
+	private long[] offsets = new long[64];
+	private int blockCount;
+	private long rawWritten;
+	private long frameWritten;
+
+	private boolean headerWritten;
+	private boolean closed;
+
+	/**
+	 * write() tmps
+	 */
+	private final byte[] tmp = new byte[1];
+
+	/**
+	 * Creates a stream using the default level and block size on the
+	 * common fork join pool.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 */
+	public ParallelHsOutputStream(OutputStream out, int windowSize, int lookaheadSize) {
+		this(out, windowSize, lookaheadSize, HsEncoder.DEFAULT_COMPRESSION, HsFrame.DEFAULT_BLOCK_SIZE,
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a stream.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @param blockSize The number of bytes in each block, up to 16 MB.
+	 *                  Bigger blocks compress a little better but use
+	 *                  more memory.
+	 * @param executor Where to encode the blocks
+	 */
+	public ParallelHsOutputStream(OutputStream out, int windowSize, int lookaheadSize, int level, int blockSize,
+			ExecutorService executor) {
+		this(out, windowSize, lookaheadSize, level, blockSize, executor, false);
+	}
+
+	/**
+	 * Creates a stream that can store blocks that don't compress as they
+	 * are.  Each block is tried on a sample first so random or already
+	 * compressed data costs little more than a copy and grows by only
+	 * the block headers.  Readers from before stored blocks can't read
+	 * the result.
+	 *
+	 * @param out the underlying output stream
+	 * @param windowSize The window size (in bits)
+	 * @param lookaheadSize The lookahead size (in bits)
+	 * @param level The compression level from {@link HsEncoder#BEST_SPEED} to
+	 *              {@link HsEncoder#BEST_COMPRESSION}
+	 * @param blockSize The number of bytes in each block, up to 16 MB.
+	 *                  Bigger blocks compress a little better but use
+	 *                  more memory.
+	 * @param executor Where to encode the blocks
+	 * @param storeIncompressible whether to store blocks that don't compress
+	 */
+	public ParallelHsOutputStream(OutputStream out, int windowSize, int lookaheadSize, int level, int blockSize,
+			ExecutorService executor, boolean storeIncompressible) {
+		super(out);
+		HsEncoder.checkSizes(windowSize, lookaheadSize);
+		if (level < HsEncoder.BEST_SPEED || level > HsEncoder.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level " + level);
+		}
+		if (blockSize < 1 || blockSize > HsFrame.MAX_BLOCK_SIZE) {
+			throw new IllegalArgumentException("Invalid block size " + blockSize);
+		}
+		this.frame = new HsFrame(windowSize, lookaheadSize, blockSize,
+				HsFrame.FLAG_INDEX | (storeIncompressible ? HsFrame.FLAG_STORED : 0));
+		this.level = level;
+		this.executor = executor;
+		this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+		this.block = new byte[blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		tmp[0] = (byte) b;
+		write(tmp, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (b == null) {
+			throw new NullPointerException();
+		} else if ((off < 0) || (off > b.length) || (len < 0) ||
+				((off + len) > b.length) || ((off + len) < 0)) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		while (len > 0) {
+			int n = Math.min(len, block.length - blockPos);
+			System.arraycopy(b, off, block, blockPos, n);
+			blockPos += n;
+			off += n;
+			len -= n;
+			if (blockPos == block.length) {
+				submitBlock();
+			}
+		}
+	}
+
+	/**
+	 * Ends the current block early and writes everything submitted so
+	 * far.
+	 */
+	@Override
+	public void flush() throws IOException {
+		submitBlock();
+		while (!pending.isEmpty()) {
+			writeBlock(pending.poll());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes everything and the end of the frame then closes the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			submitBlock();
+			while (!pending.isEmpty()) {
+				writeBlock(pending.poll());
+			}
+			writeHeader();
+			HsFrame.writeInt(out, 0);
+			HsFrame.writeIndex(out, offsets, blockCount, rawWritten, frameWritten + 4);
+			out.flush();
+		} finally {
+			for (Future<byte[]> f : pending) {
+				f.cancel(true);
+			}
+			out.close();
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		if (blockPos == 0) {
+			return;
+		}
+		byte[] raw = block;
+		int len = blockPos;
+		block = new byte[raw.length];
+		blockPos = 0;
+		pending.add(executor.submit(() -> {
+			HsEncoder encoder = encoders.poll();
+			if (encoder == null) {
+				encoder = new HsEncoder(frame.windowSize, frame.lookaheadSize, level);
+			}
+			try {
+				return (frame.flags & HsFrame.FLAG_STORED) != 0 ? HsFrame.encodeOrStoreBlock(encoder, raw, 0, len)
+						: HsFrame.encodeBlock(encoder, raw, 0, len);
+			} finally {
+				encoders.add(encoder);
+			}
+		}));
+		while (pending.size() > maxPending) {
+			writeBlock(pending.poll());
+		}
+	}
+
+	private void writeBlock(Future<byte[]> encoded) throws IOException {
+		byte[] b;
+		try {
+			b = encoded.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		writeHeader();
+		if (blockCount * 2 == offsets.length) {
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		}
+		offsets[blockCount * 2] = rawWritten;
+		offsets[blockCount * 2 + 1] = frameWritten;
+		blockCount++;
+		rawWritten += HsFrame.getInt(b, 0);
+		frameWritten += b.length;
+		out.write(b);
+	}
+
+	private void writeHeader() throws IOException {
+		if (!headerWritten) {
+			headerWritten = true;
+			frame.writeHeader(out);
+			frameWritten = HsFrame.HEADER_SIZE;
+		}
+	}
+}
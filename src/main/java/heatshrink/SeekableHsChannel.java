@@ -0,0 +1,237 @@
+package heatshrink;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read only channel over a frame written by {@link ParallelHsOutputStream}
+ * that can be positioned anywhere in the decoded data.  The block index
+ * at the end of the frame is used to find the block holding a position,
+ * so reading from the middle of a big frame only decodes the blocks read
+ * from.  The most recent block is kept decoded.
+ * <p>
+ * Positions and sizes are in decoded bytes.  Not safe for use by more
+ * than one thread at a time.
+ */
+public class SeekableHsChannel implements SeekableByteChannel {
+
+	private final SeekableByteChannel channel;
+	private final HsFrame frame;
+	private final HsDecoder decoder;
+
+	/**
+	 * Where each block starts in the decoded data, plus the total length
+	 * on the end, and where each block starts in the frame
+	 */
+	private final long[] rawOffsets;
+	private final long[] frameOffsets;
+	private final int blockCount;
+
+	/**
+	 * The block currently decoded and its encoded bytes
+	 */
+	private final byte[] block;
+	private final byte[] encoded;
+	private int blockIndex = -1;
+
+	private long position;
+
+	/**
+	 * Opens a frame on a channel.  The channel's position is moved
+	 * around as blocks are read.
+	 *
+	 * @param channel the frame
+	 * @throws IOException if the frame has no index or it can't be read
+	 */
+	public SeekableHsChannel(SeekableByteChannel channel) throws IOException {
+		this.channel = channel;
+		byte[] header = readAt(0, new byte[HsFrame.HEADER_SIZE], HsFrame.HEADER_SIZE);
+		this.frame = HsFrame.readHeader(new ByteArrayInputStream(header));
+		if ((frame.flags & HsFrame.FLAG_INDEX) == 0) {
+			throw new IOException("Frame has no index");
+		}
+
+		long size = channel.size();
+		byte[] footer = readAt(size - HsFrame.FOOTER_SIZE, new byte[HsFrame.FOOTER_SIZE], HsFrame.FOOTER_SIZE);
+		long indexOffset = HsFrame.getLong(footer, 0);
+		long indexLength = size - HsFrame.FOOTER_SIZE - indexOffset;
+		if (HsFrame.getInt(footer, 8) != HsFrame.INDEX_MAGIC
+				|| indexOffset < HsFrame.HEADER_SIZE || indexLength < 12 || indexLength > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt frame index");
+		}
+		byte[] index = readAt(indexOffset, new byte[(int) indexLength], (int) indexLength);
+		this.blockCount = HsFrame.getInt(index, 0);
+		if (blockCount < 0 || indexLength != 12 + 16L * blockCount) {
+			throw new IOException("Corrupt frame index");
+		}
+		this.rawOffsets = new long[blockCount + 1];
+		this.frameOffsets = new long[blockCount];
+		for (int i = 0; i < blockCount; i++) {
+			rawOffsets[i] = HsFrame.getLong(index, 4 + 16 * i);
+			frameOffsets[i] = HsFrame.getLong(index, 12 + 16 * i);
+		}
+		rawOffsets[blockCount] = HsFrame.getLong(index, 4 + 16 * blockCount);
+		// starting at 0 makes the total the sum of the block lengths, even with no blocks
+		if (rawOffsets[0] != 0) {
+			throw new IOException("Corrupt frame index");
+		}
+		for (int i = 0; i < blockCount; i++) {
+			long rawLength = rawOffsets[i + 1] - rawOffsets[i];
+			if (rawLength < 1 || rawLength > frame.blockSize
+					|| frameOffsets[i] < HsFrame.HEADER_SIZE || frameOffsets[i] >= indexOffset
+					|| (i > 0 && frameOffsets[i] <= frameOffsets[i - 1])) {
+				throw new IOException("Corrupt frame index");
+			}
+		}
+
+		this.decoder = new HsDecoder(frame.windowSize, frame.lookaheadSize);
+		this.block = new byte[frame.blockSize];
+		this.encoded = new byte[HsFrame.BLOCK_HEADER_SIZE + HsFrame.maxEncodedLength(frame.blockSize)];
+	}
+
+	/**
+	 * Opens a frame in a file
+	 *
+	 * @param path the file
+	 * @return the channel
+	 * @throws IOException if the frame has no index or it can't be read
+	 */
+	public static SeekableHsChannel open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return new SeekableHsChannel(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		long size = size();
+		if (position >= size) {
+			return -1;
+		}
+		int n = 0;
+		while (dst.hasRemaining() && position < size) {
+			int i = loadBlock(position);
+			int off = (int) (position - rawOffsets[i]);
+			int len = (int) Math.min(dst.remaining(), rawOffsets[i + 1] - position);
+			dst.put(block, off, len);
+			position += len;
+			n += len;
+		}
+		return n;
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	/**
+	 * Move to a position in the decoded data.  Nothing is decoded until
+	 * the next read.
+	 */
+	@Override
+	public SeekableHsChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if (newPosition < 0) {
+			throw new IllegalArgumentException();
+		}
+		position = newPosition;
+		return this;
+	}
+
+	/**
+	 * @return the decoded size of the frame
+	 */
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return rawOffsets[blockCount];
+	}
+
+	@Override
+	public SeekableHsChannel truncate(long size) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Decode the block holding <code>pos</code> unless it's already there
+	 *
+	 * @return the block's index
+	 */
+	private int loadBlock(long pos) throws IOException {
+		if (blockIndex >= 0 && pos >= rawOffsets[blockIndex] && pos < rawOffsets[blockIndex + 1]) {
+			return blockIndex;
+		}
+		int i = Arrays.binarySearch(rawOffsets, 0, blockCount, pos);
+		if (i < 0) {
+			i = -i - 2;
+		}
+		if (i < 0 || i >= blockCount) {
+			throw new IOException("Corrupt frame index");
+		}
+		blockIndex = -1;
+		int rawLength = (int) (rawOffsets[i + 1] - rawOffsets[i]);
+		readAt(frameOffsets[i], encoded, HsFrame.BLOCK_HEADER_SIZE);
+		int encodedLength = HsFrame.getInt(encoded, 4);
+		if (HsFrame.getInt(encoded, 0) != rawLength || !frame.isValidBlock(rawLength, encodedLength)) {
+			throw new IOException("Corrupt block header");
+		}
+		if (frame.isStored(encodedLength)) {
+			readAt(frameOffsets[i] + HsFrame.BLOCK_HEADER_SIZE, block, rawLength);
+		} else {
+			readAt(frameOffsets[i] + HsFrame.BLOCK_HEADER_SIZE, encoded, encodedLength);
+			HsFrame.decodeBlock(decoder, encoded, encodedLength, block, rawLength);
+		}
+		blockIndex = i;
+		return i;
+	}
+
+	private byte[] readAt(long pos, byte[] b, int len) throws IOException {
+		if (pos < 0) {
+			throw new EOFException();
+		}
+		channel.position(pos);
+		ByteBuffer buf = ByteBuffer.wrap(b, 0, len);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) {
+				throw new EOFException();
+			}
+		}
+		return b;
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+	}
+}
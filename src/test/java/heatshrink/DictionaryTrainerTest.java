@@ -0,0 +1,126 @@
+package heatshrink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DictionaryTrainerTest {
+
+	@Test
+	public void testDictionaryCompressesSmallMessages() throws IOException {
+		Random random = new Random(42);
+		DictionaryTrainer trainer = new DictionaryTrainer(512);
+		for (int i = 0; i < 200; i++) {
+			trainer.addSample(message(random));
+		}
+		byte[] dictionary = trainer.train();
+		Assert.assertTrue(dictionary.length > 0);
+		Assert.assertTrue(dictionary.length <= 512);
+
+		long plain = 0;
+		long primed = 0;
+		for (int level = HsEncoder.BEST_SPEED; level <= HsEncoder.BEST_COMPRESSION; level++) {
+			for (int i = 0; i < 20; i++) {
+				byte[] message = message(random);
+				plain += roundTrip(message, null, level);
+				primed += roundTrip(message, dictionary, level);
+			}
+		}
+		Assert.assertTrue("Dictionary " + primed + " vs plain " + plain, primed * 2 < plain);
+	}
+
+	@Test
+	public void testDictionaryKeptAcrossClear() throws IOException {
+		byte[] dictionary = "{\"sensor\":\"temperature\",\"unit\":\"celsius\",\"value\":".getBytes();
+		byte[] message = "{\"sensor\":\"temperature\",\"unit\":\"celsius\",\"value\":21.5}".getBytes();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsOutputStream hso = new HsOutputStream(output, 8, 4);
+				HsInputStream hsi = new HsInputStream(null, 8, 4)) {
+			hso.setDictionary(dictionary);
+			hsi.setDictionary(dictionary);
+			for (int i = 0; i < 3; i++) {
+				output.reset();
+				hso.clear(output);
+				hso.write(message);
+				hso.flush();
+				Assert.assertTrue(output.size() < message.length / 2);
+
+				hsi.clear(new ByteArrayInputStream(output.toByteArray()));
+				byte[] decoded = new byte[message.length];
+				Assert.assertEquals(message.length, hsi.readNBytes(decoded, 0, decoded.length));
+				Assert.assertArrayEquals(message, decoded);
+			}
+
+			// back to an empty window
+			output.reset();
+			hso.setDictionary(null);
+			hso.clear(output);
+			hso.write(message);
+			hso.flush();
+			ByteArrayOutputStream plain = new ByteArrayOutputStream();
+			try (HsOutputStream fresh = new HsOutputStream(plain, 8, 4)) {
+				fresh.write(message);
+			}
+			Assert.assertArrayEquals(plain.toByteArray(), output.toByteArray());
+		}
+	}
+
+	@Test
+	public void testDictionaryLongerThanWindow() throws IOException {
+		byte[] dictionary = new byte[1000];
+		for (int i = 0; i < dictionary.length; i++) {
+			dictionary[i] = (byte) (i * 13);
+		}
+		// only the last 256 bytes are reachable with an 8 bit window
+		byte[] message = Arrays.copyOfRange(dictionary, 800, 1000);
+		Assert.assertTrue(roundTrip(message, dictionary, HsEncoder.DEFAULT_COMPRESSION) < message.length / 4);
+	}
+
+	@Test
+	public void testNothingShared() {
+		DictionaryTrainer trainer = new DictionaryTrainer(100);
+		trainer.addSample("abcdefgh".getBytes());
+		trainer.addSample("ijklmnop".getBytes());
+		Assert.assertEquals(0, trainer.train().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadSegmentLength() {
+		new DictionaryTrainer(100, 9);
+	}
+
+	/**
+	 * @return the compressed size
+	 */
+	private static int roundTrip(byte[] message, byte[] dictionary, int level) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsOutputStream hso = new HsOutputStream(output, 8, 4, level)) {
+			hso.setDictionary(dictionary);
+			hso.write(message);
+		}
+		byte[] decoded = new byte[message.length];
+		try (HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(output.toByteArray()), 8, 4)) {
+			hsi.setDictionary(dictionary);
+			int n = 0;
+			for (int r; n < decoded.length && (r = hsi.read(decoded, n, decoded.length - n)) > 0; ) {
+				n += r;
+			}
+			Assert.assertEquals(message.length, n);
+			Assert.assertEquals(-1, hsi.read());
+		}
+		Assert.assertArrayEquals(message, decoded);
+		return output.size();
+	}
+
+	private static byte[] message(Random random) {
+		return ("{\"device\":\"pump-" + random.nextInt(20) + "\",\"status\":\""
+				+ (random.nextBoolean() ? "running" : "stopped") + "\",\"pressure\":" + random.nextInt(1000)
+				+ ",\"temperature\":" + random.nextInt(100) + ",\"firmware\":\"2.4." + random.nextInt(3) + "\"}")
+				.getBytes();
+	}
+}
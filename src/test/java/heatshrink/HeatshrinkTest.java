@@ -0,0 +1,81 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+@RunWith(Parameterized.class)
+public class HeatshrinkTest {
+
+	@Parameters(name="{0}")
+	public static Iterable<Object[]> generateParameters() {
+		return TestData.getTestParameters();
+	}
+
+	private final TestFile testFile;
+
+	public HeatshrinkTest(TestFile testFile) {
+		this.testFile = testFile;
+	}
+
+	@Test
+	public void testCompressDecompress() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] expected = FileUtils.readFileToByteArray(testFile.getCompressed());
+		int w = testFile.getWindowSize();
+		int l = testFile.getLookaheadSize();
+
+		byte[] compressed = new byte[3 + Heatshrink.maxCompressedLength(uncompressed.length, w, l)];
+		int len = Heatshrink.compress(uncompressed, 0, uncompressed.length, compressed, 3, w, l);
+		Assert.assertArrayEquals(expected, Arrays.copyOfRange(compressed, 3, 3 + len));
+
+		// an exact fit
+		byte[] decompressed = new byte[uncompressed.length + 2];
+		Assert.assertEquals(uncompressed.length, Heatshrink.decompress(compressed, 3, len, decompressed, 2, w, l));
+		Assert.assertArrayEquals(uncompressed, Arrays.copyOfRange(decompressed, 2, decompressed.length));
+	}
+
+	@Test
+	public void testDestinationTooSmall() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		int w = testFile.getWindowSize();
+		int l = testFile.getLookaheadSize();
+		if (uncompressed.length == 0) {
+			return;
+		}
+		try {
+			Heatshrink.compress(uncompressed, 0, uncompressed.length, new byte[compressed.length - 1], 0, w, l);
+			Assert.fail();
+		} catch (IllegalArgumentException expected) {
+		}
+		try {
+			Heatshrink.decompress(compressed, 0, compressed.length, new byte[uncompressed.length - 1], 0, w, l);
+			Assert.fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void testMaxCompressedLength() {
+		int w = testFile.getWindowSize();
+		int l = testFile.getLookaheadSize();
+		Random random = new Random(w * 31 + l);
+		for (int level = HsEncoder.BEST_SPEED; level <= HsEncoder.BEST_COMPRESSION; level++) {
+			byte[] uncompressed = new byte[random.nextInt(5000)];
+			random.nextBytes(uncompressed);
+			byte[] compressed = new byte[Heatshrink.maxCompressedLength(uncompressed.length, w, l)];
+			int len = Heatshrink.compress(uncompressed, 0, uncompressed.length, compressed, 0, w, l, level);
+			byte[] decompressed = new byte[uncompressed.length];
+			Assert.assertEquals(uncompressed.length, Heatshrink.decompress(compressed, 0, len, decompressed, 0, w, l));
+			Assert.assertArrayEquals(uncompressed, decompressed);
+		}
+	}
+}
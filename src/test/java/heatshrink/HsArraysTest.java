@@ -0,0 +1,152 @@
+package heatshrink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class HsArraysTest {
+
+	private static final int[] TRANSFORMS = {
+			0,
+			HsArrays.DELTA,
+			HsArrays.DELTA | HsArrays.ZIGZAG,
+			HsArrays.DELTA | HsArrays.ZIGZAG | HsArrays.SHUFFLE,
+			HsArrays.ZIGZAG,
+			HsArrays.SHUFFLE,
+			HsArrays.XOR,
+			HsArrays.XOR | HsArrays.SHUFFLE,
+			HsArrays.XOR | HsArrays.ZIGZAG | HsArrays.SHUFFLE,
+	};
+
+	@Test
+	public void testShorts() {
+		short[] values = new short[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (short) sensor(i);
+		}
+		values[10] = Short.MIN_VALUE;
+		values[11] = Short.MAX_VALUE;
+		for (int transforms : TRANSFORMS) {
+			Assert.assertArrayEquals(values, HsArrays.decompressShorts(HsArrays.compress(values, transforms)));
+		}
+	}
+
+	@Test
+	public void testInts() {
+		int[] values = new int[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (int) sensor(i) * 1000;
+		}
+		values[10] = Integer.MIN_VALUE;
+		values[11] = Integer.MAX_VALUE;
+		for (int transforms : TRANSFORMS) {
+			Assert.assertArrayEquals(values, HsArrays.decompressInts(HsArrays.compress(values, transforms)));
+		}
+	}
+
+	@Test
+	public void testLongs() {
+		long[] values = new long[5000];
+		for (int i = 0; i < values.length; i++) {
+			// timestamps a few ms apart
+			values[i] = 1_700_000_000_000L + i * 10 + (i * 7 % 3);
+		}
+		values[10] = Long.MIN_VALUE;
+		values[11] = Long.MAX_VALUE;
+		for (int transforms : TRANSFORMS) {
+			Assert.assertArrayEquals(values, HsArrays.decompressLongs(HsArrays.compress(values, transforms)));
+		}
+	}
+
+	@Test
+	public void testDoubles() {
+		double[] values = new double[5000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = sensor(i) / 4.0;
+		}
+		values[10] = Double.NaN;
+		values[11] = Double.NEGATIVE_INFINITY;
+		values[12] = -0.0;
+		for (int transforms : TRANSFORMS) {
+			Assert.assertArrayEquals(values, HsArrays.decompressDoubles(HsArrays.compress(values, transforms)), 0);
+		}
+	}
+
+	@Test
+	public void testSmallerThanDataOutputStream() throws IOException {
+		int[] values = new int[20000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (int) sensor(i);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new HsOutputStream(output,
+				Heatshrink.DEFAULT_WINDOW_SIZE, Heatshrink.DEFAULT_LOOKAHEAD_SIZE))) {
+			for (int v : values) {
+				out.writeInt(v);
+			}
+		}
+		byte[] compressed = HsArrays.compress(values);
+		Assert.assertTrue(compressed.length + " vs " + output.size(), compressed.length * 2 < output.size());
+		Assert.assertArrayEquals(values, HsArrays.decompressInts(compressed));
+	}
+
+	@Test
+	public void testRange() {
+		long[] values = {1, 2, 3, 4, 5, 6};
+		byte[] compressed = HsArrays.compress(values, 2, 3, HsArrays.DEFAULT_TRANSFORMS, 8, 4, HsEncoder.BEST_SPEED);
+		byte[] padded = new byte[compressed.length + 4];
+		System.arraycopy(compressed, 0, padded, 2, compressed.length);
+		Assert.assertArrayEquals(new long[] {3, 4, 5}, HsArrays.decompressLongs(padded, 2, compressed.length));
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(0, HsArrays.decompressDoubles(HsArrays.compress(new double[0])).length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongType() {
+		HsArrays.decompressLongs(HsArrays.compress(new int[] {1, 2, 3}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncated() {
+		byte[] compressed = HsArrays.compress(new int[] {1, 2, 3, 400, 5000, 60000});
+		HsArrays.decompressInts(compressed, 0, compressed.length - 2);
+	}
+
+	@Test
+	public void testCorruptHeader() {
+		byte[] compressed = HsArrays.compress(new int[] {1, 2, 3, 400, 5000, 60000});
+		int[][] corruptions = {{1, 0x10}, {1, HsArrays.DELTA | HsArrays.XOR}, {2, 0}, {2, 0xff}, {2, 16}, {2, 31},
+				{3, 0}, {3, 2}, {3, 11}, {3, 12}};
+		for (int[] corruption : corruptions) {
+			byte[] corrupt = compressed.clone();
+			corrupt[corruption[0]] = (byte) corruption[1];
+			try {
+				HsArrays.decompressInts(corrupt);
+				Assert.fail("Accepted byte " + corruption[0] + " = " + corruption[1]);
+			} catch (IllegalArgumentException expected) {
+				Assert.assertEquals("Corrupt header", expected.getMessage());
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeltaAndXor() {
+		HsArrays.compress(new int[] {1}, HsArrays.DELTA | HsArrays.XOR);
+	}
+
+	/**
+	 * A slowly drifting reading with a little noise
+	 */
+	private static long sensor(int i) {
+		return Math.round(2000 + 500 * Math.sin(i / 200.0) + NOISE[i % NOISE.length]);
+	}
+
+	private static final int[] NOISE = new Random(7).ints(97, -3, 4).toArray();
+}
@@ -0,0 +1,72 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+
+public class HsAsyncFilesTest {
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testEncodeDecodeFiles() throws Exception {
+		for (TestFile testFile : TestData.getTestFiles()) {
+			File encoded = tmpFolder.newFile();
+			File decoded = tmpFolder.newFile();
+			long n;
+			try (AsynchronousFileChannel in = openInput(testFile.getUncompressed().toPath());
+					AsynchronousFileChannel out = openOutput(encoded.toPath())) {
+				n = HsAsyncFiles.encode(in, out, testFile.getWindowSize(), testFile.getLookaheadSize()).get();
+			}
+			Assert.assertEquals(encoded.length(), n);
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getCompressed())
+					, FileUtils.readFileToByteArray(encoded));
+
+			try (AsynchronousFileChannel in = openInput(encoded.toPath());
+					AsynchronousFileChannel out = openOutput(decoded.toPath())) {
+				n = HsAsyncFiles.decode(in, out, testFile.getWindowSize(), testFile.getLookaheadSize()).get();
+			}
+			Assert.assertEquals(decoded.length(), n);
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getUncompressed())
+					, FileUtils.readFileToByteArray(decoded));
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		File empty = tmpFolder.newFile();
+		File encoded = tmpFolder.newFile();
+		try (AsynchronousFileChannel in = openInput(empty.toPath());
+				AsynchronousFileChannel out = openOutput(encoded.toPath())) {
+			Assert.assertEquals(0, (long) HsAsyncFiles.encode(in, out, 8, 4).join());
+		}
+	}
+
+	@Test(expected = ExecutionException.class)
+	public void testFailure() throws Exception {
+		File file = tmpFolder.newFile();
+		// can't write to a channel opened for reading
+		try (AsynchronousFileChannel in = openInput(file.toPath());
+				AsynchronousFileChannel out = openInput(file.toPath())) {
+			FileUtils.writeByteArrayToFile(file, new byte[1000]);
+			HsAsyncFiles.encode(in, out, 8, 4).get();
+		}
+	}
+
+	private static AsynchronousFileChannel openInput(Path path) throws Exception {
+		return AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+	}
+
+	private static AsynchronousFileChannel openOutput(Path path) throws Exception {
+		return AsynchronousFileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+}
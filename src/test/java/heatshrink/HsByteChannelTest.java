@@ -0,0 +1,109 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+public class HsByteChannelTest {
+
+	@Test
+	public void testWriteRead() throws IOException {
+		for (TestFile testFile : TestData.getTestFiles()) {
+			byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (HsWritableByteChannel channel = new HsWritableByteChannel(Channels.newChannel(output),
+					testFile.getWindowSize(), testFile.getLookaheadSize())) {
+				// a mix of direct and heap buffers of odd sizes
+				ByteBuffer direct = ByteBuffer.allocateDirect(777);
+				for (int off = 0; off < uncompressed.length; ) {
+					int n = Math.min(uncompressed.length - off, off % 2 == 0 ? 777 : 1234);
+					ByteBuffer src;
+					if (off % 2 == 0) {
+						direct.clear();
+						direct.put(uncompressed, off, n).flip();
+						src = direct;
+					} else {
+						src = ByteBuffer.wrap(uncompressed, off, n);
+					}
+					Assert.assertEquals(n, channel.write(src));
+					Assert.assertFalse(src.hasRemaining());
+					off += n;
+				}
+			}
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getCompressed()), output.toByteArray());
+
+			try (HsReadableByteChannel channel = new HsReadableByteChannel(
+					Channels.newChannel(new ByteArrayInputStream(output.toByteArray())),
+					testFile.getWindowSize(), testFile.getLookaheadSize())) {
+				ByteBuffer decoded = ByteBuffer.allocateDirect(uncompressed.length + 1);
+				ByteBuffer dst = decoded.duplicate();
+				while (channel.read(dst.limit(Math.min(dst.capacity(), dst.position() + 1000))) >= 0) {
+					Assert.assertTrue(dst.position() <= uncompressed.length);
+				}
+				Assert.assertEquals(uncompressed.length, dst.position());
+				byte[] b = new byte[uncompressed.length];
+				decoded.get(b);
+				Assert.assertArrayEquals(uncompressed, b);
+			}
+		}
+	}
+
+	@Test
+	public void testNothingAvailable() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsWritableByteChannel channel = new HsWritableByteChannel(Channels.newChannel(output), 8, 4)) {
+			channel.write(ByteBuffer.wrap("hello hello hello".getBytes()));
+		}
+		byte[] encoded = output.toByteArray();
+		int[] calls = new int[1];
+		// like a non-blocking channel, hands out a byte every other call
+		ReadableByteChannel trickle = new ReadableByteChannel() {
+			int pos;
+
+			@Override
+			public int read(ByteBuffer dst) {
+				if (pos == encoded.length) {
+					return -1;
+				}
+				if (calls[0]++ % 2 == 0) {
+					return 0;
+				}
+				dst.put(encoded[pos++]);
+				return 1;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		ByteBuffer dst = ByteBuffer.allocate(100);
+		try (HsReadableByteChannel channel = new HsReadableByteChannel(trickle, 8, 4)) {
+			int r;
+			while ((r = channel.read(dst)) >= 0) {
+				Assert.assertTrue(r >= 0);
+			}
+		}
+		Assert.assertEquals("hello hello hello", new String(dst.array(), 0, dst.position()));
+	}
+
+	@Test(expected = ClosedChannelException.class)
+	public void testWriteClosed() throws IOException {
+		HsWritableByteChannel channel = new HsWritableByteChannel(Channels.newChannel(new ByteArrayOutputStream()), 8, 4);
+		channel.close();
+		Assert.assertFalse(channel.isOpen());
+		channel.write(ByteBuffer.allocate(1));
+	}
+}
@@ -0,0 +1,139 @@
+package heatshrink;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class HsCodecPoolTest {
+
+	@Test
+	public void testReuseMatchesFresh() throws IOException {
+		HsCodecPool pool = new HsCodecPool(8, 4);
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			// some messages are bigger than the window so history gets shifted in
+			byte[] message = new byte[random.nextInt(i % 10 == 0 ? 2000 : 100)];
+			for (int j = 0; j < message.length; j++) {
+				message[j] = (byte) ((j % (1 + i % 37)) * 31 ^ i);
+			}
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			HsOutputStream hso = pool.getOutputStream(output);
+			hso.write(message);
+			hso.flush();
+			pool.release(hso);
+
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			try (HsOutputStream fresh = new HsOutputStream(expected, 8, 4)) {
+				fresh.write(message);
+			}
+			Assert.assertArrayEquals(expected.toByteArray(), output.toByteArray());
+
+			HsInputStream hsi = pool.getInputStream(new ByteArrayInputStream(output.toByteArray()));
+			Assert.assertArrayEquals(message, IOUtils.toByteArray(hsi));
+			pool.release(hsi);
+		}
+	}
+
+	@Test
+	public void testReuseCodecs() {
+		HsCodecPool pool = new HsCodecPool(8, 4, HsEncoder.BEST_COMPRESSION);
+		for (int i = 0; i < 50; i++) {
+			byte[] message = new byte[100 + i * 20];
+			for (int j = 0; j < message.length; j++) {
+				message[j] = (byte) ((j % (3 + i)) ^ i);
+			}
+			HsEncoder encoder = pool.getEncoder();
+			encoder.setInput(message);
+			encoder.finish();
+			byte[] compressed = new byte[message.length * 2];
+			int len = 0;
+			while (!encoder.finished()) {
+				len += encoder.encode(compressed, len, compressed.length - len);
+			}
+			pool.release(encoder);
+
+			HsDecoder decoder = pool.getDecoder();
+			decoder.setInput(compressed, 0, len);
+			byte[] decompressed = new byte[message.length];
+			Assert.assertEquals(message.length, decoder.decode(decompressed));
+			pool.release(decoder);
+			Assert.assertArrayEquals(message, decompressed);
+		}
+	}
+
+	@Test
+	public void testSettingsDropped() throws IOException {
+		HsCodecPool pool = new HsCodecPool(8, 4);
+		byte[] message = "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+		byte[] dictionary = new byte[256];
+		Arrays.fill(dictionary, (byte) ' ');
+		System.arraycopy(message, 0, dictionary, 0, message.length);
+
+		HsOutputStream hso = pool.getOutputStream(new ByteArrayOutputStream());
+		hso.setDictionary(dictionary);
+		hso.setStats(new HsStats());
+		pool.release(hso);
+		HsInputStream hsi = pool.getInputStream(new ByteArrayInputStream(new byte[0]));
+		hsi.setDictionary(dictionary);
+		hsi.setSyncMarkers(true);
+		hsi.setStats(new HsStats());
+		pool.release(hsi);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		hso = pool.getOutputStream(output);
+		Assert.assertNull(hso.getStats());
+		hso.write(message);
+		hso.flush();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (HsOutputStream fresh = new HsOutputStream(expected, 8, 4)) {
+			fresh.write(message);
+		}
+		Assert.assertArrayEquals(expected.toByteArray(), output.toByteArray());
+
+		hsi = pool.getInputStream(new ByteArrayInputStream(output.toByteArray()));
+		Assert.assertNull(hsi.getStats());
+		Assert.assertArrayEquals(message, IOUtils.toByteArray(hsi));
+
+		HsEncoder encoder = pool.getEncoder();
+		encoder.setDictionary(dictionary);
+		encoder.setStats(new HsStats());
+		pool.release(encoder);
+		HsDecoder decoder = pool.getDecoder();
+		decoder.setDictionary(dictionary);
+		decoder.setSyncMarkers(true);
+		decoder.setStats(new HsStats());
+		pool.release(decoder);
+
+		encoder = pool.getEncoder();
+		Assert.assertNull(encoder.getStats());
+		encoder.setInput(message);
+		encoder.finish();
+		byte[] compressed = new byte[64];
+		int len = 0;
+		while (!encoder.finished()) {
+			len += encoder.encode(compressed, len, compressed.length - len);
+		}
+		Assert.assertArrayEquals(expected.toByteArray(), Arrays.copyOf(compressed, len));
+
+		decoder = pool.getDecoder();
+		Assert.assertNull(decoder.getStats());
+		Assert.assertFalse(decoder.isSyncMarkers());
+		decoder.setInput(compressed, 0, len);
+		byte[] decompressed = new byte[message.length];
+		Assert.assertEquals(message.length, decoder.decode(decompressed));
+		Assert.assertArrayEquals(message, decompressed);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLevel() {
+		new HsCodecPool(8, 4, 0);
+	}
+}
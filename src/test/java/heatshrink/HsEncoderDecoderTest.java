@@ -0,0 +1,155 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+@RunWith(Parameterized.class)
+public class HsEncoderDecoderTest {
+
+	@Parameters(name="{0}")
+	public static Iterable<Object[]> generateParameters() {
+		return TestData.getTestParameters();
+	}
+
+	private final TestFile testFile;
+
+	public HsEncoderDecoderTest(TestFile testFile) {
+		this.testFile = testFile;
+	}
+
+	@Test
+	public void testEncodeMatchesStream() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(HsOutputStream hso = new HsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.write(uncompressed);
+		}
+		Assert.assertArrayEquals(output.toByteArray(), encode(uncompressed, false));
+		Assert.assertArrayEquals(output.toByteArray(), encode(uncompressed, true));
+	}
+
+	@Test
+	public void testEncodeDecode() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] compressed = encode(uncompressed, false);
+		Assert.assertArrayEquals(uncompressed, decode(compressed, false));
+		Assert.assertArrayEquals(uncompressed, decode(compressed, true));
+	}
+
+	@Test
+	public void testDecodeInPlace() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] compressed = encode(uncompressed, false);
+		// read without an array, whatever the byte order and position
+		ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length + 3).order(ByteOrder.LITTLE_ENDIAN);
+		direct.position(3);
+		direct.put(compressed).position(3);
+		ByteBuffer readOnly = ByteBuffer.wrap(compressed).asReadOnlyBuffer();
+		for (ByteBuffer src : new ByteBuffer[] {direct, readOnly}) {
+			HsDecoder decoder = new HsDecoder(testFile.getWindowSize(), testFile.getLookaheadSize());
+			// room to spare so the decoder can tell it's done
+			ByteBuffer dst = ByteBuffer.allocate(uncompressed.length + 1);
+			Assert.assertEquals(HsResult.UNDERFLOW, decoder.decode(src, dst));
+			Assert.assertFalse(src.hasRemaining());
+			Assert.assertEquals(uncompressed.length, dst.position());
+			Assert.assertArrayEquals(uncompressed, Arrays.copyOf(dst.array(), uncompressed.length));
+		}
+	}
+
+	@Test
+	public void testPushEncodeDecode() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[7];
+		HsEncoder encoder = new HsEncoder(testFile.getWindowSize(), testFile.getLookaheadSize());
+		for (int off = 0; off < uncompressed.length; off += 13) {
+			encoder.setInput(uncompressed, off, Math.min(13, uncompressed.length - off));
+			while (!encoder.needsInput()) {
+				output.write(buffer, 0, encoder.encode(buffer));
+			}
+		}
+		encoder.finish();
+		while (!encoder.finished()) {
+			output.write(buffer, 0, encoder.encode(buffer));
+		}
+		byte[] compressed = output.toByteArray();
+		Assert.assertArrayEquals(encode(uncompressed, false), compressed);
+
+		output.reset();
+		buffer = new byte[11];
+		HsDecoder decoder = new HsDecoder(testFile.getWindowSize(), testFile.getLookaheadSize());
+		for (int off = 0; off < compressed.length; off += 5) {
+			decoder.setInput(compressed, off, Math.min(5, compressed.length - off));
+			while (!decoder.needsInput()) {
+				output.write(buffer, 0, decoder.decode(buffer));
+			}
+			Assert.assertEquals(0, decoder.getRemaining());
+		}
+		decoder.finish();
+		while (!decoder.finished()) {
+			output.write(buffer, 0, decoder.decode(buffer));
+		}
+		Assert.assertArrayEquals(uncompressed, output.toByteArray());
+	}
+
+	private byte[] encode(byte[] data, boolean direct) {
+		HsEncoder encoder = new HsEncoder(testFile.getWindowSize(), testFile.getLookaheadSize());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ByteBuffer dst = allocate(7, direct);
+		for (int off = 0; off < data.length; off += 13) {
+			ByteBuffer src = copy(data, off, Math.min(13, data.length - off), direct);
+			while (encoder.encode(src, dst) == HsResult.OVERFLOW) {
+				drain(dst, output);
+			}
+			Assert.assertFalse(src.hasRemaining());
+		}
+		while (encoder.finish(dst) == HsResult.OVERFLOW) {
+			drain(dst, output);
+		}
+		drain(dst, output);
+		return output.toByteArray();
+	}
+
+	private byte[] decode(byte[] data, boolean direct) {
+		HsDecoder decoder = new HsDecoder(testFile.getWindowSize(), testFile.getLookaheadSize());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ByteBuffer dst = allocate(11, direct);
+		for (int off = 0; off < data.length; off += 5) {
+			ByteBuffer src = copy(data, off, Math.min(5, data.length - off), direct);
+			while (decoder.decode(src, dst) == HsResult.OVERFLOW) {
+				drain(dst, output);
+			}
+			Assert.assertFalse(src.hasRemaining());
+		}
+		drain(dst, output);
+		return output.toByteArray();
+	}
+
+	private static ByteBuffer allocate(int size, boolean direct) {
+		return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+	private static ByteBuffer copy(byte[] data, int off, int len, boolean direct) {
+		ByteBuffer b = allocate(len, direct);
+		b.put(data, off, len).flip();
+		return b;
+	}
+
+	private static void drain(ByteBuffer dst, ByteArrayOutputStream output) {
+		dst.flip();
+		while (dst.hasRemaining()) {
+			output.write(dst.get());
+		}
+		dst.clear();
+	}
+}
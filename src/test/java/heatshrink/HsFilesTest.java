@@ -0,0 +1,44 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class HsFilesTest {
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testEncodeDecodeFiles() throws Exception {
+		for (TestFile testFile : TestData.getTestFiles()) {
+			File encoded = tmpFolder.newFile();
+			File decoded = tmpFolder.newFile();
+			long n = HsFiles.encode(testFile.getUncompressed().toPath(), encoded.toPath()
+					, testFile.getWindowSize(), testFile.getLookaheadSize());
+			Assert.assertEquals(encoded.length(), n);
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getCompressed())
+					, FileUtils.readFileToByteArray(encoded));
+			n = HsFiles.decode(encoded.toPath(), decoded.toPath(), testFile.getWindowSize(), testFile.getLookaheadSize());
+			Assert.assertEquals(decoded.length(), n);
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getUncompressed())
+					, FileUtils.readFileToByteArray(decoded));
+		}
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		File empty = tmpFolder.newFile();
+		File encoded = tmpFolder.newFile();
+		File decoded = tmpFolder.newFile();
+		Files.write(decoded.toPath(), new byte[10]);
+		Assert.assertEquals(0, HsFiles.encode(empty.toPath(), encoded.toPath(), 8, 4));
+		Assert.assertEquals(0, HsFiles.decode(encoded.toPath(), decoded.toPath(), 8, 4));
+		Assert.assertEquals(0, decoded.length());
+	}
+}
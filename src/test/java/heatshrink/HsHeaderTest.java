@@ -0,0 +1,87 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+@RunWith(Parameterized.class)
+public class HsHeaderTest {
+
+	@Parameters(name="{0}")
+	public static Iterable<Object[]> generateParameters() {
+		return TestData.getTestParameters();
+	}
+
+	private final TestFile testFile;
+
+	public HsHeaderTest(TestFile testFile) {
+		this.testFile = testFile;
+	}
+
+	@Test
+	public void testWriteReadWithHeader() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsOutputStream hso = HsOutputStream.withHeader(output, testFile.getWindowSize(), testFile.getLookaheadSize(),
+				HsEncoder.DEFAULT_COMPRESSION, uncompressed.length)) {
+			hso.write(uncompressed);
+		}
+		byte[] withHeader = output.toByteArray();
+		Assert.assertEquals(16 + compressed.length, withHeader.length);
+
+		try (HsInputStream hsi = HsInputStream.open(new ByteArrayInputStream(withHeader))) {
+			Assert.assertEquals(uncompressed.length, hsi.getLength());
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+		// the fallback sizes are wrong on purpose
+		try (HsInputStream hsi = HsInputStream.open(new ByteArrayInputStream(withHeader), 15, 14)) {
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+	}
+
+	@Test
+	public void testUnknownLength() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsOutputStream hso = HsOutputStream.withHeader(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.write(uncompressed);
+		}
+		try (HsInputStream hsi = HsInputStream.open(new ByteArrayInputStream(output.toByteArray()))) {
+			Assert.assertEquals(-1, hsi.getLength());
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+	}
+
+	@Test
+	public void testDetectPlain() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		try (HsInputStream hsi = HsInputStream.open(new ByteArrayInputStream(compressed),
+				testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			Assert.assertEquals(-1, hsi.getLength());
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptSizes() throws IOException {
+		// a 1 GB window
+		byte[] header = {'H', 'S', 'S', 'T', 1, 30, 30, 0};
+		HsInputStream.open(new ByteArrayInputStream(header));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNoHeader() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		HsInputStream.open(new ByteArrayInputStream(compressed));
+	}
+}
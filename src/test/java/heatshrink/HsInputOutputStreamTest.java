@@ -42,4 +42,40 @@ public class HsInputOutputStreamTest {
 			Assert.assertArrayEquals(uncompressed, uncompressed2);
 		}
 	}
+
+	@Test
+	public void testWriteReadLevels() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		for (int level = HsEncoder.BEST_SPEED; level <= HsEncoder.BEST_COMPRESSION; level++) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try(HsOutputStream hso = new HsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize(), level)) {
+				hso.write(uncompressed);
+			}
+			try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(output.toByteArray()), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+				byte[] uncompressed2 = new byte[uncompressed.length];
+				IOUtils.read(hsi, uncompressed2);
+				Assert.assertArrayEquals("level " + level, uncompressed, uncompressed2);
+			}
+		}
+	}
+
+	@Test
+	public void testWriteReadParseModes() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		int[] sizes = new int[HsEncoder.ParseMode.values().length];
+		for (HsEncoder.ParseMode parseMode : HsEncoder.ParseMode.values()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try(HsOutputStream hso = new HsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize(),
+					HsEncoder.DEFAULT_COMPRESSION, parseMode)) {
+				hso.write(uncompressed);
+			}
+			sizes[parseMode.ordinal()] = output.size();
+			try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(output.toByteArray()), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+				byte[] uncompressed2 = new byte[uncompressed.length];
+				IOUtils.read(hsi, uncompressed2);
+				Assert.assertArrayEquals(parseMode.name(), uncompressed, uncompressed2);
+			}
+		}
+		Assert.assertTrue(sizes[HsEncoder.ParseMode.OPTIMAL.ordinal()] <= sizes[HsEncoder.ParseMode.GREEDY.ordinal()]);
+	}
 }
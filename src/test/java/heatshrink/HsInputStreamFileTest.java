@@ -9,8 +9,11 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -83,4 +86,89 @@ public class HsInputStreamFileTest {
 			Assert.assertEquals(uncompressed.length, skipped);
 		}
 	}
+
+	@Test
+	public void testSkipThenRead() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		FilterInputStream trickle = new FilterInputStream(new ByteArrayInputStream(compressed)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 3));
+			}
+		};
+		try(HsInputStream hsi = new HsInputStream(trickle, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			int pos = 0;
+			for (int step = 1; pos < uncompressed.length; step = step * 3 + 1) {
+				int skip = Math.min(step, uncompressed.length - pos);
+				Assert.assertEquals(skip, hsi.skip(skip));
+				pos += skip;
+				if (pos < uncompressed.length) {
+					Assert.assertEquals(uncompressed[pos] & 0xff, hsi.read());
+					pos++;
+				}
+			}
+			Assert.assertEquals(0, hsi.skip(10));
+			Assert.assertEquals(-1, hsi.read());
+		}
+	}
+
+	@Test
+	public void testDecodeFully() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			byte[] uncompressed2 = new byte[uncompressed.length];
+			hsi.decodeFully(uncompressed2);
+			Assert.assertArrayEquals(uncompressed, uncompressed2);
+			Assert.assertEquals(-1, hsi.read());
+		}
+	}
+
+	@Test
+	public void testReadNBytesThenRead() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		FilterInputStream trickle = new FilterInputStream(new ByteArrayInputStream(compressed)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 5));
+			}
+		};
+		try(HsInputStream hsi = new HsInputStream(trickle, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			// stop part way, likely in the middle of a backref, then carry on the normal way
+			byte[] uncompressed2 = new byte[uncompressed.length + 4];
+			int half = uncompressed.length * 2 / 3;
+			Assert.assertEquals(half, hsi.readNBytes(uncompressed2, 4, half));
+			Assert.assertEquals(uncompressed.length - half, IOUtils.read(hsi, uncompressed2, 4 + half, uncompressed.length - half));
+			Assert.assertArrayEquals(uncompressed, Arrays.copyOfRange(uncompressed2, 4, uncompressed2.length));
+			Assert.assertEquals(0, hsi.readNBytes(uncompressed2, 0, 4));
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void testDecodeFullyPastEnd() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hsi.decodeFully(new byte[uncompressed.length + 1]);
+		}
+	}
+
+	@Test
+	public void testReadTrickledInput() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		FilterInputStream trickle = new FilterInputStream(new ByteArrayInputStream(compressed)) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		try(HsInputStream hsi = new HsInputStream(trickle, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			byte[] uncompressed2 = new byte[uncompressed.length];
+			Assert.assertEquals(uncompressed.length, IOUtils.read(hsi, uncompressed2));
+			Assert.assertArrayEquals(uncompressed, uncompressed2);
+		}
+	}
 }
@@ -4,7 +4,11 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 /**
  * Created by mriley on 12/2/16.
@@ -44,14 +48,14 @@ public class HsInputStreamTest {
 			hsi.ensureAvailable(16);
 			Assert.assertEquals(3, hsi.available());
 		}
-		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(new byte[] {1,2,3,1,2,3}), 2, 1)) {
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(new byte[] {1,2,3,1,2,3}), 4, 3)) {
 			Assert.assertEquals(528408, hsi.getBits(27));
 			Assert.assertTrue(hsi.ensureAvailable(16));
 			Assert.assertTrue(hsi.ensureAvailable(16));
 			Assert.assertEquals(33025, hsi.getBits(20));
 			Assert.assertFalse(hsi.ensureAvailable(2));
 		}
-		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(new byte[] {1,2,3,1,2,3}), 2, 1)) {
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(new byte[] {1,2,3,1,2,3}), 4, 3)) {
 			Assert.assertEquals(258, hsi.getBits(16));
 			Assert.assertEquals(1574928, hsi.getBits(27));
 		}
@@ -102,4 +106,109 @@ public class HsInputStreamTest {
 			Assert.assertEquals(511, hsi.skipRaw(513));
 		}
 	}
+
+	@Test
+	public void testInvalidSizes() {
+		int[][] sizes = {{3, 2}, {4, 2}, {4, 4}, {16, 8}, {30, 30}};
+		for (int[] size : sizes) {
+			try {
+				new HsInputStream(new ByteArrayInputStream(new byte[0]), size[0], size[1]);
+				Assert.fail("Accepted " + size[0] + "/" + size[1]);
+			} catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testLiteralAfterShortBackref() throws IOException {
+		// with 4/3 a backref is shorter than a literal
+		byte[] data = new byte[2000];
+		Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) random.nextInt(3);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(HsOutputStream hso = new HsOutputStream(output, 4, 3)) {
+			hso.write(data);
+		}
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(output.toByteArray()), 4, 3)) {
+			byte[] data2 = new byte[data.length];
+			int len = 0;
+			for (int n; len < data2.length && (n = hsi.read(data2, len, data2.length - len)) > 0; ) {
+				len += n;
+			}
+			Assert.assertEquals(data.length, len);
+			Assert.assertArrayEquals(data, data2);
+		}
+	}
+
+	@Test
+	public void testDecodeIntoEndsWithShortBackref() throws IOException {
+		// with 4/3 a backref is 8 bits so it can be all that's left of the input
+		Random random = new Random(3);
+		for (int i = 0; i < 500; i++) {
+			byte[] data = new byte[random.nextInt(400)];
+			for (int j = 0; j < data.length; j++) {
+				data[j] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 'a' + random.nextInt(3));
+			}
+			byte[] compressed = new byte[Heatshrink.maxCompressedLength(data.length, 4, 3)];
+			int len = Heatshrink.compress(data, 0, data.length, compressed, 0, 4, 3);
+
+			byte[] data2 = new byte[data.length + 1];
+			Assert.assertEquals(data.length, Heatshrink.decompress(compressed, 0, len, data2, 0, 4, 3));
+			Assert.assertArrayEquals(data, Arrays.copyOf(data2, data.length));
+
+			try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed, 0, len), 4, 3)) {
+				byte[] data3 = new byte[data.length];
+				hsi.decodeFully(data3);
+				Assert.assertArrayEquals(data, data3);
+				Assert.assertEquals(-1, hsi.read());
+			}
+		}
+	}
+
+	@Test
+	public void testReadNBytesWhenSourceReadsNothing() throws IOException {
+		byte[] data = new byte[5000];
+		Random random = new Random(4);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + random.nextInt(8));
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(HsOutputStream hso = new HsOutputStream(output, 8, 4)) {
+			hso.write(data);
+		}
+		byte[] compressed = output.toByteArray();
+		// every other read comes back empty
+		InputStream source = new InputStream() {
+			private int pos;
+			private int reads;
+
+			@Override
+			public int read() {
+				return pos < compressed.length ? compressed[pos++] & 0xff : -1;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (pos == compressed.length) {
+					return -1;
+				} else if (reads++ % 2 == 1) {
+					return 0;
+				}
+				int n = Math.min(Math.min(len, 40), compressed.length - pos);
+				System.arraycopy(compressed, pos, b, off, n);
+				pos += n;
+				return n;
+			}
+		};
+		try(HsInputStream hsi = new HsInputStream(source, 8, 4)) {
+			byte[] data2 = new byte[data.length];
+			Assert.assertEquals(3000, hsi.readNBytes(data2, 0, 3000));
+			// the rest goes through the window
+			Assert.assertEquals(data.length - 3000, hsi.readNBytes(data2, 3000, data.length - 3000));
+			Assert.assertArrayEquals(data, data2);
+			Assert.assertEquals(-1, hsi.read());
+		}
+	}
 }
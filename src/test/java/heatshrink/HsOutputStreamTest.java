@@ -1,9 +1,14 @@
 package heatshrink;
 
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Created by mriley on 12/10/16.
@@ -16,6 +21,34 @@ public class HsOutputStreamTest {
 		}
 	}
 
+	@Test
+	public void testClearForgetsHistory() throws IOException {
+		// repeats so anything left in the window would match
+		byte[] data = new byte[2000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i % 100) * 31 ^ 0x55);
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(HsOutputStream hso = new HsOutputStream(output, 9, 8)) {
+			hso.write(data);
+			hso.clear();
+			output.reset();
+			hso.write(data);
+		}
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(output.toByteArray()), 9, 8)) {
+			byte[] data2 = new byte[data.length];
+			Assert.assertEquals(data.length, hsi.read(data2));
+			Assert.assertArrayEquals(data, data2);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadLevel() throws IOException {
+		try(HsOutputStream hso = new HsOutputStream(new ByteArrayOutputStream(), 9, 8, 10)) {
+			hso.clear();
+		}
+	}
+
 	@Test(expected = NullPointerException.class)
 	public void testNullBuffer() throws IOException {
 		try(HsOutputStream hso = new HsOutputStream(new ByteArrayOutputStream(), 9, 8)) {
@@ -56,4 +89,127 @@ public class HsOutputStreamTest {
 			hso.write(new byte[5], 1, 0);
 		}
 	}
+
+	@Test
+	public void testBufferedWrites() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int[] singleWrites = new int[1];
+		FilterOutputStream counting = new FilterOutputStream(output) {
+			@Override
+			public void write(int b) throws IOException {
+				singleWrites[0]++;
+				out.write(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+		};
+		byte[] data = new byte[10000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31 ^ i >> 3);
+		}
+		try(HsOutputStream hso = new HsOutputStream(counting, 9, 8)) {
+			hso.write(data);
+		}
+		Assert.assertEquals(0, singleWrites[0]);
+		Assert.assertTrue(output.size() > 0);
+	}
+
+	@Test
+	public void testSyncFlush() throws IOException {
+		int[][] sizes = {{4, 3}, {8, 4}, {9, 8}, {11, 4}, {15, 8}};
+		for (int[] size : sizes) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			int[] readUpTo = new int[1];
+			// hands out only what's been sync flushed so far
+			InputStream flushed = new InputStream() {
+				@Override
+				public int read() {
+					throw new UnsupportedOperationException();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					byte[] buf = output.toByteArray();
+					int n = Math.min(len, buf.length - readUpTo[0]);
+					Assert.assertTrue("Read past the last sync flush", n > 0);
+					System.arraycopy(buf, readUpTo[0], b, off, n);
+					readUpTo[0] += n;
+					return n;
+				}
+			};
+			try(HsOutputStream hso = new HsOutputStream(output, size[0], size[1]);
+					HsInputStream hsi = new HsInputStream(flushed, size[0], size[1])) {
+				hsi.setSyncMarkers(true);
+				for (int i = 0; i < 200; i++) {
+					byte[] message = message(i);
+					hso.write(message);
+					hso.syncFlush();
+					byte[] decoded = new byte[message.length];
+					for (int off = 0; off < decoded.length; ) {
+						off += hsi.read(decoded, off, decoded.length - off);
+					}
+					Assert.assertArrayEquals(message, decoded);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSizes() {
+		// one byte backrefs would be worth using, so sync markers couldn't work
+		new HsOutputStream(new ByteArrayOutputStream(), 4, 2);
+	}
+
+	@Test
+	public void testSyncFlushKeepsHistory() throws IOException {
+		ByteArrayOutputStream synced = new ByteArrayOutputStream();
+		ByteArrayOutputStream flushed = new ByteArrayOutputStream();
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		int[] ends = new int[200];
+		try(HsOutputStream sync = new HsOutputStream(synced, 11, 4);
+				HsOutputStream flush = new HsOutputStream(flushed, 11, 4)) {
+			for (int i = 0; i < ends.length; i++) {
+				byte[] message = message(i);
+				all.write(message);
+				sync.write(message);
+				sync.syncFlush();
+				flush.write(message);
+				flush.flush();
+				ends[i] = flushed.size();
+			}
+		}
+		Assert.assertTrue(synced.size() < flushed.size());
+
+		// each flush ended a stream that decodes on its own
+		byte[] flushedBytes = flushed.toByteArray();
+		try(HsInputStream hsi = new HsInputStream(null, 11, 4)) {
+			for (int i = 0, start = 0; i < ends.length; start = ends[i++]) {
+				hsi.clear(new ByteArrayInputStream(flushedBytes, start, ends[i] - start));
+				byte[] message = message(i);
+				byte[] decoded = new byte[message.length];
+				Assert.assertEquals(decoded.length, hsi.readNBytes(decoded, 0, decoded.length));
+				Assert.assertEquals(-1, hsi.read());
+				Assert.assertArrayEquals(message, decoded);
+			}
+		}
+
+		try(HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(synced.toByteArray()), 11, 4)) {
+			hsi.setSyncMarkers(true);
+			byte[] decoded = new byte[all.size()];
+			Assert.assertEquals(decoded.length, hsi.readNBytes(decoded, 0, decoded.length));
+			Assert.assertEquals(-1, hsi.read());
+			Assert.assertArrayEquals(all.toByteArray(), decoded);
+		}
+	}
+
+	/**
+	 * Similar messages of different lengths, some longer than the window
+	 */
+	private static byte[] message(int i) {
+		byte[] message = ("{\"id\":" + i + ",\"temp\":" + (i * 7 % 40) + ",\"status\":\"ok\"}").getBytes();
+		return i % 50 == 49 ? Arrays.copyOf(message, 3000 + i) : message;
+	}
 }
@@ -0,0 +1,84 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+@RunWith(Parameterized.class)
+public class HsStatsTest {
+
+	@Parameters(name="{0}")
+	public static Iterable<Object[]> generateParameters() {
+		return TestData.getTestParameters();
+	}
+
+	private final TestFile testFile;
+
+	public HsStatsTest(TestFile testFile) {
+		this.testFile = testFile;
+	}
+
+	@Test
+	public void testEncoderDecoderAgree() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		HsStats encoded = new HsStats();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (HsOutputStream hso = new HsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.setStats(encoded);
+			hso.write(uncompressed);
+		}
+		byte[] compressed = output.toByteArray();
+		Assert.assertEquals(uncompressed.length, encoded.getBytesIn());
+		Assert.assertEquals(compressed.length, encoded.getBytesOut());
+		Assert.assertEquals(encoded.getBackrefs(), Arrays.stream(encoded.getBackrefLengthHistogram()).sum());
+		Assert.assertEquals(encoded.getBackrefs(), Arrays.stream(encoded.getBackrefOffsetHistogram()).sum());
+		Assert.assertTrue(encoded.getProbes() >= encoded.getBackrefs());
+		Assert.assertTrue(uncompressed.length == 0 || encoded.getRatio() > 0);
+
+		HsStats decoded = new HsStats();
+		try (HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hsi.setStats(decoded);
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+		Assert.assertEquals(compressed.length, decoded.getBytesIn());
+		Assert.assertEquals(uncompressed.length, decoded.getBytesOut());
+		Assert.assertEquals(encoded.getLiterals(), decoded.getLiterals());
+		Assert.assertEquals(encoded.getBackrefs(), decoded.getBackrefs());
+		Assert.assertArrayEquals(encoded.getBackrefLengthHistogram(), decoded.getBackrefLengthHistogram());
+		Assert.assertArrayEquals(encoded.getBackrefOffsetHistogram(), decoded.getBackrefOffsetHistogram());
+		Assert.assertEquals(0, decoded.getProbes());
+
+		HsStatsEvent.commit(testFile.toString(), decoded);
+		decoded.reset();
+		Assert.assertEquals(0, decoded.getBytesOut());
+		Assert.assertEquals(0, Arrays.stream(decoded.getBackrefLengthHistogram()).sum());
+	}
+
+	@Test
+	public void testSkipCounts() throws IOException {
+		byte[] compressed = FileUtils.readFileToByteArray(testFile.getCompressed());
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		HsStats read = new HsStats();
+		HsStats skipped = new HsStats();
+		try (HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hsi.setStats(read);
+			IOUtils.toByteArray(hsi);
+		}
+		try (HsInputStream hsi = new HsInputStream(new ByteArrayInputStream(compressed), testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hsi.setStats(skipped);
+			Assert.assertEquals(uncompressed.length, hsi.skip(Long.MAX_VALUE));
+		}
+		Assert.assertEquals(read.getBytesOut(), skipped.getBytesOut());
+		Assert.assertEquals(read.getLiterals(), skipped.getLiterals());
+		Assert.assertEquals(read.getBackrefs(), skipped.getBackrefs());
+	}
+}
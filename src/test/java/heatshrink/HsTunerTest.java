@@ -0,0 +1,55 @@
+package heatshrink;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class HsTunerTest {
+
+	@Test
+	public void testTune() throws IOException {
+		byte[] sample = new byte[20000];
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = (byte) ((i % 300) * 7 ^ (i / 1000));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		List<HsTuner.Result> results;
+		try {
+			results = new HsTuner(4, 10, 3, 5, HsEncoder.DEFAULT_COMPRESSION, 1, executor).tune(sample);
+		} finally {
+			executor.shutdown();
+		}
+		// 4/3, then 3..5 for each window from 5 to 10
+		Assert.assertEquals(1 + 2 + 3 * 5, results.size());
+
+		for (HsTuner.Result result : results) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (HsOutputStream hso = new HsOutputStream(output, result.getWindowSize(), result.getLookaheadSize())) {
+				hso.write(sample);
+			}
+			Assert.assertEquals(output.size(), result.getCompressedSize());
+			Assert.assertEquals(sample.length, result.getSampleSize());
+			Assert.assertTrue(result.getEncodeMBps() > 0);
+			Assert.assertTrue(result.getDecodeMBps() > 0);
+		}
+
+		HsTuner.Result best = HsTuner.recommend(results);
+		for (HsTuner.Result result : results) {
+			Assert.assertTrue(best.getRatio() <= result.getRatio() * 1.01);
+		}
+		// the repeat is 300 bytes so a small window can't see it
+		Assert.assertTrue(best.getWindowSize() >= 9);
+	}
+
+	@Test
+	public void testRecommendNothing() throws IOException {
+		Assert.assertNull(HsTuner.recommend(new HsTuner(8, 9, 9, 10, 6, 1, ForkJoinPool.commonPool())
+				.tune(new byte[10])));
+	}
+}
@@ -6,7 +6,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
 
 public class MainTest {
 
@@ -48,4 +52,39 @@ public class MainTest {
 			out.delete();
 		}
 	}
+
+	@Test
+	public void testEncodeStdio() throws Exception {
+		InputStream in = System.in;
+		PrintStream out = System.out;
+		for (TestFile testFile : TestData.getTestFiles()) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (InputStream fileIn = new FileInputStream(testFile.getUncompressed())) {
+				System.setIn(fileIn);
+				System.setOut(new PrintStream(output));
+				Main.main(new String[] {"-e"
+						, "-w", String.valueOf(testFile.getWindowSize())
+						, "-l", String.valueOf(testFile.getLookaheadSize())
+						, "-", "-"});
+			} finally {
+				System.setIn(in);
+				System.setOut(out);
+			}
+			Assert.assertArrayEquals(FileUtils.readFileToByteArray(testFile.getCompressed())
+					, output.toByteArray());
+		}
+	}
+
+	@Test
+	public void testTune() throws Exception {
+		PrintStream out = System.out;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(output));
+			Main.main(new String[] {"--tune", TestData.getTestFiles().get(0).getUncompressed().getAbsolutePath()});
+		} finally {
+			System.setOut(out);
+		}
+		Assert.assertTrue(output.toString(), output.toString().contains("Recommended: -w "));
+	}
 }
@@ -0,0 +1,148 @@
+package heatshrink;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+@RunWith(Parameterized.class)
+public class ParallelHsInputOutputStreamTest {
+
+	@Parameters(name="{0}")
+	public static Iterable<Object[]> generateParameters() {
+		return TestData.getTestParameters();
+	}
+
+	private final TestFile testFile;
+
+	public ParallelHsInputOutputStreamTest(TestFile testFile) {
+		this.testFile = testFile;
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.write(uncompressed);
+		}
+		try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+			Assert.assertArrayEquals(uncompressed, IOUtils.toByteArray(hsi));
+		}
+	}
+
+	@Test
+	public void testWriteReadSmallBlocks() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(),
+					testFile.getLookaheadSize(), HsEncoder.BEST_COMPRESSION, 1000, executor)) {
+				int half = uncompressed.length / 2;
+				hso.write(uncompressed, 0, half);
+				hso.flush();
+				for (int i = half; i < uncompressed.length; i++) {
+					hso.write(uncompressed[i]);
+				}
+			}
+			try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(output.toByteArray()), executor)) {
+				byte[] uncompressed2 = new byte[uncompressed.length];
+				Assert.assertEquals(uncompressed.length, IOUtils.read(hsi, uncompressed2));
+				Assert.assertArrayEquals(uncompressed, uncompressed2);
+				Assert.assertEquals(-1, hsi.read());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testWriteReadStored() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		byte[] noise = new byte[30000];
+		new Random(11).nextBytes(noise);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(),
+				testFile.getLookaheadSize(), HsEncoder.DEFAULT_COMPRESSION, 10000, ForkJoinPool.commonPool(), true)) {
+			hso.write(uncompressed);
+			hso.write(noise);
+			hso.write(uncompressed);
+		}
+		try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+			Assert.assertArrayEquals(uncompressed, IOUtils.readFully(hsi, uncompressed.length));
+			Assert.assertArrayEquals(noise, IOUtils.readFully(hsi, noise.length));
+			Assert.assertArrayEquals(uncompressed, IOUtils.readFully(hsi, uncompressed.length));
+			Assert.assertEquals(-1, hsi.read());
+		}
+	}
+
+	@Test
+	public void testSkip() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(),
+				testFile.getLookaheadSize(), HsEncoder.DEFAULT_COMPRESSION, 100, Executors.newSingleThreadExecutor())) {
+			hso.write(uncompressed);
+		}
+		try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+			int skip = uncompressed.length / 3;
+			Assert.assertEquals(skip, hsi.skip(skip));
+			Assert.assertArrayEquals(Arrays.copyOfRange(uncompressed, skip, uncompressed.length), IOUtils.toByteArray(hsi));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testBadMagic() throws IOException {
+		try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(new byte[16]))) {
+			hsi.read();
+		}
+	}
+
+	@Test
+	public void testCorruptHeader() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.write(1);
+		}
+		byte[] compressed = output.toByteArray();
+		// window, lookahead, flags and the top byte of the block size
+		int[][] corruptions = {{5, 30}, {5, 3}, {6, testFile.getWindowSize()}, {6, 2}, {7, 0x80}, {8, 0x40}};
+		for (int[] corruption : corruptions) {
+			byte[] corrupt = compressed.clone();
+			corrupt[corruption[0]] = (byte) corruption[1];
+			try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(corrupt))) {
+				hsi.read();
+				Assert.fail("Accepted byte " + corruption[0] + " = " + corruption[1]);
+			} catch (IOException expected) {
+				Assert.assertEquals("Corrupt frame header", expected.getMessage());
+			}
+		}
+	}
+
+	@Test(expected = EOFException.class)
+	public void testTruncated() throws IOException {
+		byte[] uncompressed = FileUtils.readFileToByteArray(testFile.getUncompressed());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try(ParallelHsOutputStream hso = new ParallelHsOutputStream(output, testFile.getWindowSize(), testFile.getLookaheadSize())) {
+			hso.write(uncompressed);
+		}
+		byte[] compressed = output.toByteArray();
+		try(ParallelHsInputStream hsi = new ParallelHsInputStream(new ByteArrayInputStream(compressed, 0, compressed.length / 2))) {
+			IOUtils.toByteArray(hsi);
+		}
+	}
+}
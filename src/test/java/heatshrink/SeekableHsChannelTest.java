@@ -0,0 +1,131 @@
+package heatshrink;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class SeekableHsChannelTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRandomReads() throws IOException {
+		byte[] data = createData(100000);
+		Path path = writeFrame(data, 1000);
+		Random random = new Random(7);
+		try(SeekableHsChannel channel = SeekableHsChannel.open(path)) {
+			Assert.assertEquals(data.length, channel.size());
+			for (int i = 0; i < 200; i++) {
+				int pos = random.nextInt(data.length);
+				ByteBuffer dst = ByteBuffer.allocate(random.nextInt(3000) + 1);
+				channel.position(pos);
+				int n = channel.read(dst);
+				Assert.assertEquals(Math.min(dst.capacity(), data.length - pos), n);
+				Assert.assertEquals(pos + n, channel.position());
+				Assert.assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(dst.array(), n));
+			}
+			channel.position(data.length);
+			Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+			channel.position(data.length + 10L);
+			Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+		}
+	}
+
+	@Test
+	public void testStoredBlocks() throws IOException {
+		// compressible, random, then compressible again
+		byte[] data = createData(150000);
+		byte[] noise = new byte[50000];
+		new Random(3).nextBytes(noise);
+		System.arraycopy(noise, 0, data, 50000, noise.length);
+
+		Path path = folder.newFile().toPath();
+		try(OutputStream out = new ParallelHsOutputStream(new FileOutputStream(path.toFile()), 8, 4,
+				HsEncoder.DEFAULT_COMPRESSION, 10000, ForkJoinPool.commonPool(), true)) {
+			out.write(data);
+		}
+		Path plain = writeFrame(data, 10000);
+		// the random part is stored, so it grows by just the block headers
+		Assert.assertTrue(Files.size(path) < Files.size(plain) - noise.length / 10);
+
+		Random random = new Random(5);
+		try(SeekableHsChannel channel = SeekableHsChannel.open(path)) {
+			Assert.assertEquals(data.length, channel.size());
+			for (int i = 0; i < 100; i++) {
+				int pos = random.nextInt(data.length);
+				ByteBuffer dst = ByteBuffer.allocate(random.nextInt(30000) + 1);
+				channel.position(pos);
+				int n = channel.read(dst);
+				Assert.assertArrayEquals(Arrays.copyOfRange(data, pos, pos + n), Arrays.copyOf(dst.array(), n));
+			}
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		Path path = writeFrame(new byte[0], 1000);
+		try(SeekableHsChannel channel = SeekableHsChannel.open(path)) {
+			Assert.assertEquals(0, channel.size());
+			Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncated() throws IOException {
+		Path path = writeFrame(createData(5000), 1000);
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 1);
+		}
+		SeekableHsChannel.open(path).close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testEmptyIndexWithLength() throws IOException {
+		Path path = writeFrame(new byte[0], 1000);
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// the total follows the block count, just before the footer
+			ByteBuffer total = ByteBuffer.allocate(8).putLong(0, 100);
+			channel.write(total, channel.size() - HsFrame.FOOTER_SIZE - 8);
+		}
+		SeekableHsChannel.open(path).close();
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAFrame() throws IOException {
+		Path path = folder.newFile().toPath();
+		Files.write(path, new byte[100]);
+		SeekableHsChannel.open(path).close();
+	}
+
+	private Path writeFrame(byte[] data, int blockSize) throws IOException {
+		Path path = folder.newFile().toPath();
+		try(OutputStream out = new ParallelHsOutputStream(new FileOutputStream(path.toFile()), 8, 4,
+				HsEncoder.DEFAULT_COMPRESSION, blockSize, ForkJoinPool.commonPool())) {
+			out.write(data);
+		}
+		return path;
+	}
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		Random random = new Random(1);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (random.nextInt(8) + (i / 500 % 4) * 16);
+		}
+		return data;
+	}
+}